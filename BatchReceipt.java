@@ -0,0 +1,32 @@
+import java.io.Serializable;
+
+/**
+ * @author Ganesh Chandrasekaran
+ * @version 10-17-2026
+ */
+
+/**
+ * Class BatchReceipt is a GPSOffice node's answer to routeBatch(): how many of
+ * the parcels it took, and how many more it is ready to take. A node takes
+ * parcels only while it holds fewer than its admission budget, so the
+ * parcels it refuses stay with the sender.
+ */
+public class BatchReceipt implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	public final int accepted;
+	public final int credits;
+
+	/**
+	 * Create a new batch receipt.
+	 *
+	 * @param accepted
+	 *            Number of parcels taken, from the start of the batch
+	 * @param credits
+	 *            Number of parcels the node is ready to take next
+	 */
+	public BatchReceipt(int accepted, int credits) {
+		this.accepted = accepted;
+		this.credits = credits;
+	}
+}
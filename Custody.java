@@ -0,0 +1,151 @@
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * @author Ganesh Chandrasekaran
+ * @version 10-17-2026
+ */
+
+/**
+ * Class Custody holds the parcels a GPSOffice node handed off to one neighbor
+ * that the neighbor has not passed on yet, so that they can be reported lost
+ * if the neighbor fails. All of them are polled together, with one remote
+ * call per poll however many batches were handed off; at most one chain of
+ * polls runs at a time.
+ * <P>
+ * The custody also remembers whether the neighbor keeps a write-ahead
+ * journal. Such a neighbor takes up the parcels it held when it is
+ * restarted, so they are not lost just because it went down.
+ */
+public class Custody {
+	private final HashMap<Long, Parcel> held = new HashMap<Long, Parcel>();
+	private GPSOfficeRef neighbor;
+	private boolean journaled;
+	private boolean polling;
+
+	/**
+	 * Adds a batch that was handed off to the neighbor.
+	 *
+	 * @param batch
+	 *            Parcels the neighbor accepted
+	 * @param ref
+	 *            Remote reference the batch was handed to
+	 * @param isJournaled
+	 *            True if the neighbor keeps a write-ahead journal
+	 *
+	 * @return True if no poll is running and the caller must start one
+	 */
+	public synchronized boolean add(Parcel[] batch, GPSOfficeRef ref,
+			boolean isJournaled) {
+		for (Parcel parcel : batch) {
+			held.put(parcel.packageID, parcel);
+		}
+		journaled = isJournaled;
+		return resume(ref);
+	}
+
+	/**
+	 * Polls the parcels held at a new remote reference of the neighbor, for
+	 * instance once it has been restarted.
+	 *
+	 * @param ref
+	 *            Remote reference of the neighbor
+	 *
+	 * @return True if parcels are held, no poll is running and the caller
+	 *         must start one
+	 */
+	public synchronized boolean resume(GPSOfficeRef ref) {
+		neighbor = ref;
+		if (polling || held.isEmpty()) {
+			return false;
+		}
+		polling = true;
+		return true;
+	}
+
+	/**
+	 * Call this method to find out whether the neighbor keeps a write-ahead
+	 * journal
+	 *
+	 * @return True if it does, as far as this custody knows
+	 */
+	public synchronized boolean journaled() {
+		return journaled;
+	}
+
+	/**
+	 * Call this method to access the remote reference of the neighbor
+	 *
+	 * @return The reference the parcels are polled at
+	 */
+	public synchronized GPSOfficeRef neighbor() {
+		return neighbor;
+	}
+
+	/**
+	 * Call this method to find the packages to poll. If there are none, the
+	 * chain of polls ends.
+	 *
+	 * @return Package numbers of the parcels held, or null if there are none
+	 */
+	public synchronized long[] toPoll() {
+		if (held.isEmpty()) {
+			polling = false;
+			return null;
+		}
+		long[] packageNums = new long[held.size()];
+		int i = 0;
+		for (Long packageNum : held.keySet()) {
+			packageNums[i++] = packageNum;
+		}
+		return packageNums;
+	}
+
+	/**
+	 * Drops the polled parcels that the neighbor no longer holds. If none are
+	 * left, the chain of polls ends.
+	 *
+	 * @param polled
+	 *            Package numbers that were polled
+	 * @param stillHeld
+	 *            Package numbers the neighbor still holds
+	 *
+	 * @return True if parcels are left and the caller must poll again
+	 */
+	public synchronized boolean polled(long[] polled, long[] stillHeld) {
+		HashSet<Long> still = new HashSet<Long>();
+		for (long packageNum : stillHeld) {
+			still.add(packageNum);
+		}
+		for (long packageNum : polled) {
+			if (!still.contains(packageNum)) {
+				held.remove(packageNum);
+			}
+		}
+		if (held.isEmpty()) {
+			polling = false;
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Ends the chain of polls, keeping the parcels. Call this method when a
+	 * poll failed.
+	 */
+	public synchronized void pollFailed() {
+		polling = false;
+	}
+
+	/**
+	 * Takes every parcel out of custody. A running chain of polls ends at its
+	 * next poll.
+	 *
+	 * @return The parcels that were held
+	 */
+	public synchronized Parcel[] clear() {
+		Parcel[] parcels = held.values().toArray(new Parcel[held.size()]);
+		held.clear();
+		return parcels;
+	}
+}
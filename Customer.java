@@ -1,8 +1,18 @@
 import edu.rit.ds.registry.RegistryProxy;
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.io.Serializable;
 import edu.rit.ds.RemoteEventListener;
 import edu.rit.ds.registry.NotBoundException;
+import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * @author Ganesh Chandrasekaran
@@ -22,6 +32,22 @@ import java.rmi.server.UnicastRemoteObject;
  * <I>originNode</I> = name of originating node <BR>
  * <TT>X</TT> = X-coordinate of this node <BR>
  * <TT>Y</TT> = Y-coordinate of this node
+ * <P>
+ * Usage: java Customer <I>host</I> <I>port</I> <I>originNode</I>
+ * <I>file</I> <BR>
+ * <I>file</I> = file of destinations, or <TT>-</TT> for standard input
+ * <P>
+ * With a file, the customer sends one package per line of the file, each line
+ * holding the X and Y coordinates of a destination; blank lines and lines
+ * starting with <TT>#</TT> are skipped. The packages are submitted in batches
+ * of <TT>gps.customerBatch</TT> (default 256) by <TT>gps.customerThreads</TT>
+ * threads (default 4), and all of them are tracked through one listener. The
+ * customer prints the final message of each package as it comes in, and
+ * exits once every package has been delivered or lost.
+ * <P>
+ * The package is sent as a standard package unless the
+ * <TT>gps.serviceClass</TT> system property names another service class
+ * (<TT>express</TT>, <TT>standard</TT> or <TT>bulk</TT>).
  */
 public class Customer implements Serializable {
 
@@ -53,13 +79,22 @@ public class Customer implements Serializable {
 	 */
 	public static void main(String[] args) throws Exception {
 		// Parse command line arguments.
-		if (args.length != 5)
+		if (args.length != 4 && args.length != 5)
 			usage();
 		String host = args[0];
 		int port = parseInt(args[1], "port");
 		String originNode = args[2];
-		double x = parseDouble(args[3], "X - coordinate");
-		double y = parseDouble(args[4], "Y - coordinate");
+		double[][] destinations = null;
+		double x = 0;
+		double y = 0;
+		if (args.length == 4) {
+			destinations = readDestinations(args[3]);
+		} else {
+			x = parseDouble(args[3], "X - coordinate");
+			y = parseDouble(args[4], "Y - coordinate");
+		}
+		ServiceClass service = parseService(System.getProperty(
+				"gps.serviceClass", "standard"));
 		long myPackageNumber = 0;
 		GPSOfficeRef node = null;
 		registry = new RegistryProxy(host, port);
@@ -71,6 +106,10 @@ public class Customer implements Serializable {
 					+ " does not exist!");
 			System.exit(1);
 		}
+		if (destinations != null) {
+			sendAll(node, destinations[0], destinations[1], service);
+			System.exit(0);
+		}
 		// Assign tracking number to the package
 		myPackageNumber = node.assignPackageNumber();
 
@@ -80,21 +119,200 @@ public class Customer implements Serializable {
 		// from GPSOffice objects.
 		nodeListener = new RemoteEventListener<TrackPackage>() {
 			public void report(long seqnum, TrackPackage event) {
-				if (event.status == 2) {
-					System.out.println(event.message);
-					System.exit(0);
+				for (TrackPackage e : event.events()) {
+					System.out.println(e.message());
+					if (e.kind().isFinal()) {
+						System.exit(0);
+					}
 				}
-				if (event.status == 1)
-					System.out.println(event.message);
-				if (event.status == 0)
-					System.out.println(event.message);
 
 			}
 		};
 		UnicastRemoteObject.exportObject(nodeListener, 0);
 
 		// Sends the package to the originating GPSOffice node
-		node.sendPackage(myPackageNumber, x, y, nodeListener);
+		node.sendPackage(myPackageNumber, x, y, service, nodeListener);
+	}
+
+	/**
+	 * Class Tracker follows many packages through one remote event listener.
+	 * Events are routed to their package by tracking number; events of a
+	 * package whose number is not known yet, because its batch is still being
+	 * submitted, are held until it is.
+	 */
+	private static class Tracker {
+		private final LongIntHashMap index = new LongIntHashMap(-1);
+		private final boolean[] finished;
+		private final List<TrackPackage> early = new ArrayList<TrackPackage>();
+		private int remaining;
+
+		/**
+		 * Create a new tracker for the given number of packages.
+		 * 
+		 * @param packages
+		 *            int
+		 */
+		Tracker(int packages) {
+			this.finished = new boolean[packages];
+			this.remaining = packages;
+		}
+
+		/**
+		 * Records the tracking numbers of a submitted batch, and takes up the
+		 * events that came in for them before they were known.
+		 * 
+		 * @param first
+		 *            Index of the batch's first package
+		 * @param packageNumbers
+		 *            Tracking numbers of the batch
+		 */
+		synchronized void submitted(int first, long[] packageNumbers) {
+			for (int i = 0; i < packageNumbers.length; ++i) {
+				index.put(packageNumbers[i], first + i);
+			}
+			List<TrackPackage> held = new ArrayList<TrackPackage>(early);
+			early.clear();
+			for (TrackPackage e : held) {
+				record(e);
+			}
+		}
+
+		/**
+		 * Records one tracking event, printing it if it finishes its package.
+		 * 
+		 * @param e
+		 *            TrackPackage
+		 */
+		synchronized void record(TrackPackage e) {
+			int i = index.get(e.packageID());
+			if (i < 0) {
+				early.add(e);
+				return;
+			}
+			if (!e.kind().isFinal() || finished[i]) {
+				return;
+			}
+			finished[i] = true;
+			System.out.println(e.message());
+			if (--remaining == 0) {
+				notifyAll();
+			}
+		}
+
+		/**
+		 * Waits until every package is finished.
+		 */
+		synchronized void await() throws InterruptedException {
+			while (remaining > 0) {
+				wait();
+			}
+		}
+	}
+
+	/**
+	 * Sends a package to each destination and waits until all of them are
+	 * delivered or lost.
+	 * 
+	 * @param node
+	 *            Originating node
+	 * @param x
+	 *            X-coordinates of the destinations
+	 * @param y
+	 *            Y-coordinates of the destinations
+	 * @param service
+	 *            Service class of the packages
+	 */
+	private static void sendAll(final GPSOfficeRef node, final double[] x,
+			final double[] y, final ServiceClass service) throws Exception {
+		int batchSize = Integer.getInteger("gps.customerBatch", 256);
+		int threads = Integer.getInteger("gps.customerThreads", 4);
+		if (batchSize <= 0 || threads <= 0) {
+			System.err.println("Customer: gps.customerBatch and "
+					+ "gps.customerThreads must be positive");
+			System.exit(1);
+		}
+		final Tracker tracker = new Tracker(x.length);
+		nodeListener = new RemoteEventListener<TrackPackage>() {
+			public void report(long seqnum, TrackPackage event) {
+				for (TrackPackage e : event.events()) {
+					tracker.record(e);
+				}
+			}
+		};
+		UnicastRemoteObject.exportObject(nodeListener, 0);
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		for (int lb = 0; lb < x.length; lb += batchSize) {
+			final int first = lb;
+			final int n = Math.min(batchSize, x.length - lb);
+			pool.execute(new Runnable() {
+				public void run() {
+					double[] bx = new double[n];
+					double[] by = new double[n];
+					System.arraycopy(x, first, bx, 0, n);
+					System.arraycopy(y, first, by, 0, n);
+					try {
+						tracker.submitted(first,
+								node.sendPackages(bx, by, service, nodeListener));
+					} catch (RemoteException exc) {
+						System.err.println("Customer: Cannot send packages");
+						exc.printStackTrace(System.err);
+						System.exit(1);
+					}
+				}
+			});
+		}
+		pool.shutdown();
+		tracker.await();
+	}
+
+	/**
+	 * Reads the destinations of the packages to send.
+	 * 
+	 * @param name
+	 *            File name, or <TT>-</TT> for standard input.
+	 * 
+	 * @return Array of the X-coordinates and array of the Y-coordinates.
+	 */
+	private static double[][] readDestinations(String name) {
+		ArrayList<double[]> destinations = new ArrayList<double[]>();
+		try {
+			Reader source = name.equals("-") ? new InputStreamReader(System.in)
+					: new FileReader(name);
+			BufferedReader in = new BufferedReader(source);
+			String line;
+			int lineNumber = 0;
+			while ((line = in.readLine()) != null) {
+				++lineNumber;
+				line = line.trim();
+				if (line.length() == 0 || line.startsWith("#")) {
+					continue;
+				}
+				String[] fields = line.split("[\\s,]+");
+				if (fields.length != 2) {
+					System.err.printf("Customer: Invalid destination on line "
+							+ "%d: \"%s\"", lineNumber, line);
+					usage();
+				}
+				destinations.add(new double[] {
+						parseDouble(fields[0], "X - coordinate"),
+						parseDouble(fields[1], "Y - coordinate") });
+			}
+			in.close();
+		} catch (IOException exc) {
+			System.err.printf("Customer: Cannot read <file>: \"%s\"", name);
+			usage();
+		}
+		if (destinations.isEmpty()) {
+			System.err.printf("Customer: No destinations in \"%s\"", name);
+			usage();
+		}
+		double[][] xy = new double[2][destinations.size()];
+		for (int i = 0; i < xy[0].length; ++i) {
+			xy[0][i] = destinations.get(i)[0];
+			xy[1][i] = destinations.get(i)[1];
+		}
+		return xy;
 	}
 
 	/**
@@ -103,11 +321,15 @@ public class Customer implements Serializable {
 	private static void usage() {
 		System.err
 				.println("Usage: java Customer <host> <port> <originNode> <X> <Y>");
+		System.err
+				.println("   or: java Customer <host> <port> <originNode> <file>");
 		System.err.println("<host> = Registry Server's host");
 		System.err.println("<port> = Registry Server's port");
 		System.err.println("<originNode> = Name of originating node");
 		System.err.println("<X> = X cordinate of destination");
 		System.err.println("<Y> = Y cordinate of destination");
+		System.err.println("<file> = File of destinations, - for standard input");
+		System.err.println("-Dgps.serviceClass = express, standard or bulk");
 		System.exit(1);
 	}
 
@@ -135,6 +357,25 @@ public class Customer implements Serializable {
 		}
 	}
 
+	/**
+	 * Parse a service class name.
+	 * 
+	 * @param arg
+	 *            Service class name, in any case.
+	 * 
+	 * @return Service class named by <TT>arg</TT>.
+	 */
+	private static ServiceClass parseService(String arg) {
+		try {
+			return ServiceClass.valueOf(arg.toUpperCase());
+		} catch (IllegalArgumentException exc) {
+			System.err.printf("Customer: Invalid gps.serviceClass: \"%s\"",
+					arg);
+			usage();
+			return null;
+		}
+	}
+
 	/**
 	 * Parse a double command line argument.
 	 * 
@@ -0,0 +1,252 @@
+import edu.rit.ds.RemoteEventGenerator;
+import edu.rit.ds.RemoteEventListener;
+import java.rmi.RemoteException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * @author Ganesh Chandrasekaran
+ * @version 10-17-2026
+ */
+
+/**
+ * Class EventDispatcher decouples package routing from the remote event
+ * listeners of a GPSOffice node. Each listener, and the Headquarters event
+ * generator, gets a bounded queue; queued events are coalesced into one
+ * remote callback per flush. A slow or dead listener therefore never holds up
+ * the thread that routes packages.
+ * <P>
+ * The queues are drained by a fixed pool of threads. A queue with events
+ * waiting sends one batch and then goes to the back of the line, so the
+ * queues take turns on the pool however many listeners there are.
+ * <P>
+ * The dispatcher is configured by system properties: <BR>
+ * <TT>gps.eventQueueCapacity</TT> = events queued per listener (default 1024)
+ * <BR>
+ * <TT>gps.eventBatchSize</TT> = events per remote callback (default 256) <BR>
+ * <TT>gps.eventDrainThreads</TT> = threads draining the queues (default 8)
+ * <BR>
+ * <TT>gps.eventOverflow</TT> = what to do when a queue is full:
+ * <TT>coalesce</TT> (default) discards the oldest arrival or departure event
+ * to make room and blocks only if the queue holds nothing but final events,
+ * <TT>drop</TT> discards the new event, <TT>block</TT> waits for room
+ */
+public class EventDispatcher {
+
+	/**
+	 * Enum Overflow specifies what happens to an event whose listener queue is
+	 * full.
+	 */
+	public static enum Overflow {
+		DROP, COALESCE, BLOCK
+	}
+
+	/**
+	 * Class Channel is the bounded queue of one destination, drained by at
+	 * most one thread at a time, one batch per turn.
+	 */
+	private abstract class Channel implements Runnable {
+		private final Object key;
+		private final ArrayDeque<TrackPackage> queue = new ArrayDeque<TrackPackage>();
+		private boolean draining;
+
+		Channel(Object key) {
+			this.key = key;
+		}
+
+		/**
+		 * Hands a coalesced batch of events to the destination.
+		 */
+		abstract void deliver(TrackPackage batch) throws RemoteException;
+
+		/**
+		 * Queues an event, applying the overflow policy if the queue is full.
+		 * Must be called with the dispatcher's lock held.
+		 */
+		void offer(TrackPackage event) {
+			while (queue.size() >= capacity) {
+				if (overflow == Overflow.DROP) {
+					metrics.increment(OfficeMetrics.Counter.EVENTS_DROPPED);
+					return;
+				}
+				if (overflow == Overflow.COALESCE && discardOldestTransient()) {
+					metrics.increment(OfficeMetrics.Counter.EVENTS_DROPPED);
+					break;
+				}
+				try {
+					EventDispatcher.this.wait();
+				} catch (InterruptedException exc) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+			// While waiting, this channel may have drained and been replaced.
+			Channel current = channels.get(key);
+			if (current == null) {
+				channels.put(key, this);
+			} else if (current != this) {
+				current.offer(event);
+				return;
+			}
+			queue.add(event);
+			if (!draining) {
+				draining = true;
+				drainPool.execute(this);
+			}
+		}
+
+		private boolean discardOldestTransient() {
+			Iterator<TrackPackage> iter = queue.iterator();
+			while (iter.hasNext()) {
+				if (!iter.next().kind().isFinal()) {
+					iter.remove();
+					return true;
+				}
+			}
+			return false;
+		}
+
+		public void run() {
+			ArrayList<TrackPackage> batch = new ArrayList<TrackPackage>();
+			synchronized (EventDispatcher.this) {
+				while (batch.size() < batchSize && !queue.isEmpty()) {
+					batch.add(queue.poll());
+				}
+				EventDispatcher.this.notifyAll();
+			}
+			try {
+				if (!batch.isEmpty()) {
+					send(batch);
+				}
+			} finally {
+				synchronized (EventDispatcher.this) {
+					if (queue.isEmpty()) {
+						draining = false;
+						if (channels.get(key) == this) {
+							channels.remove(key);
+						}
+					} else {
+						// Back of the line, behind the other channels.
+						drainPool.execute(this);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Delivers a batch. If the destination throws, the batch is dropped;
+		 * if it has gone away, its queued events go with it. Either way the
+		 * channel goes on draining.
+		 */
+		private void send(ArrayList<TrackPackage> batch) {
+			long start = System.nanoTime();
+			try {
+				deliver(TrackPackage.coalesce(batch));
+			} catch (RemoteException exc) {
+				synchronized (EventDispatcher.this) {
+					metrics.add(OfficeMetrics.Counter.EVENTS_DROPPED,
+							queue.size());
+					queue.clear();
+					EventDispatcher.this.notifyAll();
+				}
+			} catch (RuntimeException exc) {
+				metrics.add(OfficeMetrics.Counter.EVENTS_DROPPED, batch.size());
+			} finally {
+				metrics.recordSince(OfficeMetrics.Stage.LISTENER_CALLBACK,
+						start);
+			}
+		}
+	}
+
+	private final RemoteEventGenerator<TrackPackage> generator;
+	private final OfficeMetrics metrics;
+	private final int capacity;
+	private final int batchSize;
+	private final Overflow overflow;
+	private final HashMap<Object, Channel> channels = new HashMap<Object, Channel>();
+	private final ExecutorService drainPool;
+
+	/**
+	 * Create a new event dispatcher configured from the system properties.
+	 *
+	 * @param generator
+	 *            Event generator of the Headquarters listeners
+	 * @param metrics
+	 *            Metrics of the node
+	 */
+	public EventDispatcher(RemoteEventGenerator<TrackPackage> generator,
+			OfficeMetrics metrics) {
+		this.generator = generator;
+		this.metrics = metrics;
+		this.capacity = Math.max(1,
+				Integer.getInteger("gps.eventQueueCapacity", 1024));
+		this.batchSize = Math.max(1,
+				Integer.getInteger("gps.eventBatchSize", 256));
+		this.overflow = Overflow.valueOf(System.getProperty(
+				"gps.eventOverflow", "coalesce").toUpperCase());
+		this.drainPool = Executors.newFixedThreadPool(Math.max(1,
+				Integer.getInteger("gps.eventDrainThreads", 8)),
+				new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "event-drain");
+						t.setDaemon(true);
+						return t;
+					}
+				});
+	}
+
+	/**
+	 * Queues an event for the Headquarters listeners and for the given
+	 * Customer listener. Returns without waiting for any remote callback,
+	 * unless the overflow policy is BLOCK and a queue is full.
+	 *
+	 * @param listener
+	 *            Customer's remote event listener
+	 * @param event
+	 *            TrackPackage
+	 */
+	public synchronized void report(
+			final RemoteEventListener<TrackPackage> listener,
+			TrackPackage event) {
+		metrics.increment(OfficeMetrics.Counter.EVENTS_REPORTED);
+		Channel headquarters = channels.get(generator);
+		if (headquarters == null) {
+			headquarters = new Channel(generator) {
+				void deliver(TrackPackage batch) {
+					generator.reportEvent(batch);
+				}
+			};
+			channels.put(generator, headquarters);
+		}
+		headquarters.offer(event);
+
+		Channel customer = channels.get(listener);
+		if (customer == null) {
+			customer = new Channel(listener) {
+				void deliver(TrackPackage batch) throws RemoteException {
+					listener.report(0, batch);
+				}
+			};
+			channels.put(listener, customer);
+		}
+		customer.offer(event);
+	}
+
+	/**
+	 * Call this method to access the number of events waiting to be reported
+	 *
+	 * @return Number of events, over all listener queues
+	 */
+	public synchronized int queued() {
+		int queued = 0;
+		for (Channel channel : channels.values()) {
+			queued += channel.queue.size();
+		}
+		return queued;
+	}
+}
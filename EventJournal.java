@@ -0,0 +1,218 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * @author Ganesh Chandrasekaran
+ * @version 10-17-2026
+ */
+
+/**
+ * Class EventJournal is the append-only journal in which Headquarters records
+ * every tracking event it receives, so the package state can be rebuilt after
+ * a restart.
+ * <P>
+ * The journal is a SegmentedLog of two kinds of records. An OFFICE record
+ * (<TT>int</TT> office id, <TT>short</TT> name length, UTF-8 name) defines an
+ * office id before its first use in the segment, so that an EVENT record
+ * (<TT>long</TT> package number, <TT>byte</TT> kind, <TT>int</TT> office id,
+ * <TT>double</TT> destination X and Y, <TT>long</TT> timestamp) is of fixed
+ * size.
+ * <P>
+ * Segments are <TT>gps.hqJournalSegmentBytes</TT> bytes (default 64 MB);
+ * <TT>gps.hqJournalForceMillis</TT> (default 0) makes the force thread pause
+ * between forces to gather larger groups. Every run of Headquarters starts a
+ * new segment, and no segment is ever deleted, which is why Headquarters
+ * journals only when asked to.
+ */
+public class EventJournal {
+
+	/**
+	 * Interface Visitor receives the events read back from the journal.
+	 */
+	public static interface Visitor {
+
+		/**
+		 * Handles one journalled event.
+		 *
+		 * @param packageID
+		 *            long
+		 * @param kind
+		 *            TrackPackage.Kind
+		 * @param office
+		 *            String
+		 * @param destX
+		 *            double
+		 * @param destY
+		 *            double
+		 * @param timestamp
+		 *            long
+		 */
+		public void apply(long packageID, TrackPackage.Kind kind,
+				String office, double destX, double destY, long timestamp);
+	}
+
+	/**
+	 * Class Replay decodes the records read back from the segments.
+	 */
+	private static class Replay implements SegmentedLog.Visitor {
+		private final Visitor visitor;
+		private String[] names = new String[16];
+		private long count;
+
+		Replay(Visitor visitor) {
+			this.visitor = visitor;
+		}
+
+		public boolean record(byte type, MappedByteBuffer buf, int length) {
+			if (type == EVENT && length == EVENT_PAYLOAD) {
+				long packageID = buf.getLong();
+				int kind = buf.get();
+				int officeId = buf.getInt();
+				double destX = buf.getDouble();
+				double destY = buf.getDouble();
+				long timestamp = buf.getLong();
+				if (kind < 0 || kind >= KINDS.length || officeId < 0
+						|| officeId >= names.length
+						|| names[officeId] == null) {
+					return false;
+				}
+				visitor.apply(packageID, KINDS[kind], names[officeId], destX,
+						destY, timestamp);
+				++count;
+			} else if (type == OFFICE) {
+				int officeId = buf.getInt();
+				byte[] name = new byte[buf.getShort() & 0xFFFF];
+				buf.get(name);
+				if (officeId >= names.length) {
+					names = Arrays.copyOf(names,
+							Math.max(officeId + 1, names.length * 2));
+				}
+				names[officeId] = new String(name, UTF8);
+			}
+			return true;
+		}
+	}
+
+	private static final byte OFFICE = 1;
+	private static final byte EVENT = 2;
+	private static final int EVENT_PAYLOAD = 8 + 1 + 4 + 8 + 8 + 8;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final TrackPackage.Kind[] KINDS = TrackPackage.Kind
+			.values();
+
+	private final SegmentedLog log;
+
+	private final HashMap<String, Integer> officeIds = new HashMap<String, Integer>();
+	private final ArrayList<byte[]> officeNames = new ArrayList<byte[]>();
+	private boolean[] defined = new boolean[16];
+
+	/**
+	 * Open the journal in the given directory, creating the directory if
+	 * needed. Nothing is written until the first append.
+	 *
+	 * @param directory
+	 *            Journal directory
+	 *
+	 * @exception IOException
+	 *                Thrown if the directory cannot be created.
+	 */
+	public EventJournal(File directory) throws IOException {
+		log = new SegmentedLog(directory, Integer.getInteger(
+				"gps.hqJournalSegmentBytes", 64 << 20), Long.getLong(
+				"gps.hqJournalForceMillis", 0), "journal-force");
+	}
+
+	/**
+	 * Reads back every event journalled by earlier runs, oldest first. Each
+	 * segment is mapped and scanned sequentially; only office names are
+	 * decoded into new objects.
+	 *
+	 * @param visitor
+	 *            Receiver of the events
+	 *
+	 * @return Number of events read
+	 *
+	 * @exception IOException
+	 *                Thrown if a segment cannot be read.
+	 */
+	public synchronized long replay(Visitor visitor) throws IOException {
+		Replay replay = new Replay(visitor);
+		for (File file : log.earlierSegments()) {
+			SegmentedLog.read(file, replay);
+		}
+		return replay.count;
+	}
+
+	/**
+	 * Appends an event to the journal. The event is durable once a later
+	 * sync() returns.
+	 *
+	 * @param event
+	 *            TrackPackage
+	 *
+	 * @exception IOException
+	 *                Thrown if the journal is closed or a new segment cannot
+	 *                be created.
+	 */
+	public synchronized void append(TrackPackage event) throws IOException {
+		int officeId = officeId(event.office());
+		byte[] name = officeNames.get(officeId);
+		if (log.reserve(4 + 2 + name.length + EVENT_PAYLOAD, 2)) {
+			Arrays.fill(defined, false);
+		}
+
+		if (!defined[officeId]) {
+			MappedByteBuffer buf = log.begin(OFFICE, 4 + 2 + name.length);
+			buf.putInt(officeId);
+			buf.putShort((short) name.length);
+			buf.put(name);
+			log.end();
+			defined[officeId] = true;
+		}
+
+		MappedByteBuffer buf = log.begin(EVENT, EVENT_PAYLOAD);
+		buf.putLong(event.packageID());
+		buf.put((byte) event.kind().ordinal());
+		buf.putInt(officeId);
+		buf.putDouble(event.destX());
+		buf.putDouble(event.destY());
+		buf.putLong(event.timestamp());
+		log.end();
+	}
+
+	/**
+	 * Waits until every event appended so far is on disk.
+	 *
+	 * @exception InterruptedIOException
+	 *                Thrown if the calling thread is interrupted.
+	 */
+	public void sync() throws InterruptedIOException {
+		log.sync();
+	}
+
+	/**
+	 * Forces the remaining appends to disk and stops the journal.
+	 */
+	public void close() {
+		log.close();
+	}
+
+	private int officeId(String office) {
+		Integer officeId = officeIds.get(office);
+		if (officeId == null) {
+			officeId = officeNames.size();
+			officeIds.put(office, officeId);
+			officeNames.add(office.getBytes(UTF8));
+			if (officeId == defined.length) {
+				defined = Arrays.copyOf(defined, defined.length * 2);
+			}
+		}
+		return officeId;
+	}
+}
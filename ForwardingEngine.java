@@ -0,0 +1,274 @@
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Ganesh Chandrasekaran
+ * @version 10-17-2026
+ */
+
+/**
+ * Class ForwardingEngine runs the package forwarding work of a GPSOffice node.
+ * Work is partitioned into lanes by package number: tasks in one lane run one
+ * at a time and in submission order, so the events of one package are never
+ * reordered, while different lanes run in parallel on all cores.
+ * <P>
+ * The lanes share one backing executor, chosen by system properties:
+ * <P>
+ * <TT>gps.forwardLanes</TT> = number of lanes (default: number of cores) <BR>
+ * <TT>gps.forwardMode</TT> = <TT>platform</TT> for a pool with one platform
+ * thread per lane (default), or <TT>virtual</TT> for a virtual thread per task
+ * where the JVM supports it <BR>
+ * <TT>gps.serviceWeights</TT> = how many tasks of the express, standard and
+ * bulk service classes a lane runs per round while all three have tasks
+ * waiting (default <TT>8,4,1</TT>)
+ * <P>
+ * Each lane queues the tasks of each service class separately and runs them
+ * in weighted round robin, so express packages overtake standard and bulk
+ * ones without starving them. Tasks of one class still run in submission
+ * order.
+ */
+public class ForwardingEngine {
+
+	/**
+	 * Class Lane is a serial executor: it hands its tasks to the backing
+	 * executor one at a time.
+	 */
+	private class Lane implements Executor {
+		private final ArrayDeque<Runnable>[] tasks = newQueues();
+		private final int[] quantum = weights.clone();
+		private Runnable active;
+
+		public void execute(Runnable task) {
+			execute(ServiceClass.STANDARD, task);
+		}
+
+		public synchronized void execute(ServiceClass service,
+				final Runnable task) {
+			tasks[service.ordinal()].add(new Runnable() {
+				public void run() {
+					try {
+						task.run();
+					} finally {
+						scheduleNext();
+					}
+				}
+			});
+			if (active == null) {
+				scheduleNext();
+			}
+		}
+
+		private synchronized void scheduleNext() {
+			active = next();
+			if (active != null) {
+				backing.execute(active);
+			}
+		}
+
+		/**
+		 * Takes the next task: from the first class that has tasks waiting
+		 * and some of its share of the round left, starting a new round when
+		 * every waiting class has used up its share.
+		 */
+		private Runnable next() {
+			for (int pass = 0; pass < 2; ++pass) {
+				for (int c = 0; c < tasks.length; ++c) {
+					if (!tasks[c].isEmpty() && quantum[c] > 0) {
+						--quantum[c];
+						return tasks[c].poll();
+					}
+				}
+				System.arraycopy(weights, 0, quantum, 0, quantum.length);
+			}
+			return null;
+		}
+
+		synchronized int queued() {
+			int queued = 0;
+			for (ArrayDeque<Runnable> queue : tasks) {
+				queued += queue.size();
+			}
+			return queued;
+		}
+	}
+
+	private final ExecutorService backing;
+	private final int[] weights;
+	private final Lane[] lanes;
+
+	/**
+	 * Create a new forwarding engine configured from the system properties.
+	 */
+	public ForwardingEngine() {
+		this(Integer.getInteger("gps.forwardLanes", Runtime.getRuntime()
+				.availableProcessors()), "virtual".equalsIgnoreCase(System
+				.getProperty("gps.forwardMode")), parseWeights(System
+				.getProperty("gps.serviceWeights", "8,4,1")));
+	}
+
+	/**
+	 * Create a new forwarding engine.
+	 *
+	 * @param laneCount
+	 *            Number of lanes
+	 * @param virtual
+	 *            True to run each task in its own virtual thread
+	 * @param weights
+	 *            Tasks run per round for each service class, in the order of
+	 *            ServiceClass.values()
+	 */
+	public ForwardingEngine(int laneCount, boolean virtual, int[] weights) {
+		if (laneCount < 1) {
+			throw new IllegalArgumentException(
+					"ForwardingEngine(): laneCount = " + laneCount
+							+ " illegal");
+		}
+		if (weights.length != ServiceClass.values().length) {
+			throw new IllegalArgumentException(
+					"ForwardingEngine(): weights = "
+							+ Arrays.toString(weights) + " illegal");
+		}
+		for (int weight : weights) {
+			if (weight < 1) {
+				throw new IllegalArgumentException(
+						"ForwardingEngine(): weights = "
+								+ Arrays.toString(weights) + " illegal");
+			}
+		}
+		this.weights = weights.clone();
+		ExecutorService executor = virtual ? newVirtualExecutor() : null;
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(laneCount,
+					new ThreadFactory() {
+						private final AtomicInteger count = new AtomicInteger();
+
+						public Thread newThread(Runnable r) {
+							Thread t = new Thread(r, "forward-"
+									+ count.incrementAndGet());
+							t.setDaemon(true);
+							return t;
+						}
+					});
+		}
+		backing = executor;
+		lanes = new Lane[laneCount];
+		for (int i = 0; i < laneCount; ++i) {
+			lanes[i] = new Lane();
+		}
+	}
+
+	/**
+	 * Runs the given task in the lane of the given key, after every task
+	 * submitted earlier with a key in the same lane.
+	 *
+	 * @param key
+	 *            Package number, or any other ordering key
+	 * @param task
+	 *            Runnable
+	 */
+	public void execute(long key, Runnable task) {
+		lanes[laneOf(key)].execute(task);
+	}
+
+	/**
+	 * Runs the given task in the lane of the given key, in the queue of the
+	 * given service class, after every task submitted earlier with a key in
+	 * the same lane and the same class.
+	 *
+	 * @param key
+	 *            Package number, or any other ordering key
+	 * @param service
+	 *            Service class of the task
+	 * @param task
+	 *            Runnable
+	 */
+	public void execute(long key, ServiceClass service, Runnable task) {
+		lanes[laneOf(key)].execute(service, task);
+	}
+
+	/**
+	 * Call this method to access the number of lanes
+	 *
+	 * @return Number of lanes
+	 */
+	public int laneCount() {
+		return lanes.length;
+	}
+
+	/**
+	 * Call this method to access the number of tasks waiting in the lanes
+	 *
+	 * @return Number of tasks, not counting those running
+	 */
+	public int queued() {
+		int queued = 0;
+		for (Lane lane : lanes) {
+			queued += lane.queued();
+		}
+		return queued;
+	}
+
+	/**
+	 * Stops the backing executor. Tasks already running are not interrupted.
+	 */
+	public void shutdown() {
+		backing.shutdown();
+	}
+
+	/**
+	 * Maps a key to a lane, spreading consecutive keys across lanes.
+	 */
+	private int laneOf(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		h ^= (h >>> 32);
+		return (int) ((h & 0x7FFFFFFFL) % lanes.length);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static ArrayDeque<Runnable>[] newQueues() {
+		ArrayDeque<Runnable>[] queues = (ArrayDeque<Runnable>[]) new ArrayDeque<?>[ServiceClass
+				.values().length];
+		for (int i = 0; i < queues.length; ++i) {
+			queues[i] = new ArrayDeque<Runnable>();
+		}
+		return queues;
+	}
+
+	/**
+	 * Parses comma-separated service class weights.
+	 */
+	private static int[] parseWeights(String value) {
+		String[] parts = value.split(",");
+		int[] weights = new int[parts.length];
+		try {
+			for (int i = 0; i < parts.length; ++i) {
+				weights[i] = Integer.parseInt(parts[i].trim());
+			}
+		} catch (NumberFormatException exc) {
+			throw new IllegalArgumentException(
+					"ForwardingEngine(): gps.serviceWeights = " + value
+							+ " illegal");
+		}
+		return weights;
+	}
+
+	/**
+	 * Returns a virtual-thread-per-task executor, or null if this JVM has no
+	 * virtual threads.
+	 */
+	private static ExecutorService newVirtualExecutor() {
+		try {
+			Method factory = Executors.class
+					.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (Exception exc) {
+			return null;
+		}
+	}
+}
@@ -3,13 +3,20 @@ import edu.rit.ds.RemoteEventGenerator;
 import edu.rit.ds.RemoteEventListener;
 import edu.rit.ds.registry.AlreadyBoundException;
 import edu.rit.ds.registry.NotBoundException;
+import edu.rit.ds.registry.RegistryEvent;
+import edu.rit.ds.registry.RegistryEventFilter;
+import edu.rit.ds.registry.RegistryEventListener;
 import edu.rit.ds.registry.RegistryProxy;
+import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
 import java.rmi.NoSuchObjectException;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.Set;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.*;
 
 /**
@@ -29,6 +36,74 @@ import java.util.*;
  * <I>officeName</I> = name of this node itself <BR>
  * <I>X-coordinate</I> = X-coordinate of the GPSOffice <BR>
  * <I>Y-coordinate</I> = Y-coordinate of the GPSOffice <BR>
+ * <P>
+ * A node's neighbors are the <TT>gps.neighbors</TT> offices (default 3)
+ * closest to it (see NeighborTable). All nodes of a system should use the
+ * same number; more neighbors give shorter routes where offices are dense.
+ * <P>
+ * A node places its office ID in every tracking number it assigns. It picks
+ * an ID no bound office uses, or the one given by <TT>gps.officeId</TT>, and
+ * issues no number until the ID is settled: once no office has been in its
+ * way for <TT>gps.officeIdSettleMillis</TT> milliseconds (default 1000), a
+ * check against every bound office finds none using it. Until then it gives
+ * the ID up to an office that started earlier or has settled, and picks
+ * another. If every office ID is used, the node fails to start, or fails
+ * every request for tracking numbers.
+ * <P>
+ * Each node keeps counters and latency histograms of its work, available
+ * remotely through getStats(). If the system property <TT>gps.statsDir</TT>
+ * names a directory, the node also appends its stats to the file
+ * <I>officeName</I><TT>.stats</TT> there every
+ * <TT>gps.statsIntervalMillis</TT> milliseconds (default 10000).
+ * <P>
+ * Packages are routed greedily, each node choosing the next hop in turn,
+ * unless the system property <TT>gps.routing</TT> is <TT>source</TT>. Then
+ * the originating node computes the whole route from its office index, and
+ * the nodes on the way forward the package along it; a node falls back to
+ * greedy routing if the next office on the route has closed.
+ * <P>
+ * Each node sends heartbeats to its neighbors (see HeartbeatMonitor). A
+ * neighbor that stops answering is dropped from the node's office index and
+ * replaced by the next closest office; no other node is involved. As the
+ * neighbor may only be slow, the packages in its custody are reported lost by
+ * it only once it is known to be gone: a call to it fails, or it is unbound
+ * from the Registry Server.
+ * <P>
+ * If a neighbor cannot take a package, the node hands it to the next closest
+ * neighbor that still brings it nearer its destination, trying up to
+ * <TT>gps.failoverAttempts</TT> (default 2) other neighbors before reporting
+ * the package lost. If <TT>gps.hedgeMillis</TT> is positive (default 0, off),
+ * packages a neighbor has not accepted within that time are also sent to the
+ * next candidate. Hedging can duplicate packages: if the slow neighbor
+ * accepts them after all, both copies travel on and each is reported
+ * delivered.
+ * <P>
+ * A node examines at most <TT>gps.admissionBudget</TT> packages (default
+ * 4096) at once; routeBatch() takes only as many as fit and tells the sender
+ * how many more it is ready to take, its credits. A sender keeps the refused
+ * packages in its outbound buffer, sends no more than the neighbor's credits,
+ * and diverts a package to the next candidate neighbor once it has been
+ * refused for <TT>gps.creditHoldMillis</TT> milliseconds (default 500).
+ * Packages submitted by Customers are never refused, but count against the
+ * budget. Packages waiting in outbound buffers do not: as every hop brings a
+ * package closer to its destination, the node holding it downstream always
+ * frees its credits in the end, and the wait cannot deadlock.
+ * <P>
+ * If the system property <TT>gps.officeJournal</TT> names a directory, the
+ * node records the packages it accepts and hands off in a write-ahead journal
+ * in its subdirectory <I>officeName</I> there (see OfficeJournal), and takes
+ * up the packages it still held when it is restarted. Accepted packages are
+ * on disk before the call that handed them over returns. A node does not
+ * report the packages it handed to a journaled neighbor lost when the
+ * neighbor fails, but only once the neighbor has stayed unbound for
+ * <TT>gps.custodyGraceMillis</TT> milliseconds (default 60000) without
+ * being restarted.
+ * <P>
+ * Every package has a service class, express, standard or bulk, that it keeps
+ * all the way. Examination takes as long for every class, but once examined,
+ * express packages are forwarded ahead of standard and bulk ones (see
+ * ForwardingEngine), and an express package is sent to the neighbor at once
+ * instead of waiting for its outbound batch to fill.
  * 
  */
 public class GPSOffice implements GPSOfficeRef {
@@ -37,17 +112,81 @@ public class GPSOffice implements GPSOfficeRef {
 	private String officeName;
 	private double X;
 	private double Y;
+	private volatile OfficeDescriptor descriptor;
+	private long epoch;
+	private boolean fixedOfficeId;
+	private TrackingNumberAllocator trackingNumbers;
+
+	// Whether the office ID is settled and numbers may be issued, why it
+	// never will be, and how often it was moved; guarded by officeIdLock.
+	private final Object officeIdLock = new Object();
+	private volatile boolean officeIdSettled;
+	private String officeIdFailure;
+	private int officeIdMoves;
 
 	private RegistryProxy registry;
+	private RegistryEventListener registryListener;
+	private RegistryEventFilter registryFilter;
+	private Lease registryLease;
 
 	HashMap<String, Double> tempDistance;
 
-	HashMap<String, Double[]> neighborsTable;
+	private final int fanOut = NeighborTable.fanOut();
+
+	volatile NeighborTable neighborsTable = new NeighborTable(fanOut);
+
+	private OfficeIndex officeIndex = new OfficeIndex();
+
+	private final NextHopCache hopCache = new NextHopCache();
+
+	private final boolean sourceRouting = "source".equalsIgnoreCase(System
+			.getProperty("gps.routing"));
+
+	// Three seconds per the system specification; shortened only by load
+	// tests.
+	private static final long INSPECTION_MILLIS = Math.max(0,
+			Long.getLong("gps.inspectionMillis", 3000));
+	private static final long CUSTODY_POLL_MILLIS = 500;
+	private static final long OFFICE_ID_SETTLE_MILLIS = Math.max(0,
+			Long.getLong("gps.officeIdSettleMillis", 1000));
+	private static final long CUSTODY_GRACE_MILLIS = Math.max(0,
+			Long.getLong("gps.custodyGraceMillis", 60000));
+	private static final int FAILOVER_ATTEMPTS = Math.max(0,
+			Integer.getInteger("gps.failoverAttempts", 2));
+	private static final long HEDGE_MILLIS = Long.getLong("gps.hedgeMillis",
+			0);
+	private static final int ADMISSION_BUDGET = Math.max(1,
+			Integer.getInteger("gps.admissionBudget", 4096));
+	private static final long CREDIT_HOLD_MILLIS = Math.max(0,
+			Long.getLong("gps.creditHoldMillis", 500));
 
 	private ScheduledExecutorService threadPool;
 
+	private ForwardingEngine forwarder;
+
+	private ConcurrentHashMap<Long, Boolean> holding = new ConcurrentHashMap<Long, Boolean>();
+
+	private final Object admission = new Object();
+
+	// Packages accepted or admitted and not yet examined.
+	private final AtomicInteger examining = new AtomicInteger();
+
+	private ConcurrentHashMap<String, OutboundBuffer> outboundBuffers = new ConcurrentHashMap<String, OutboundBuffer>();
+
 	private RemoteEventGenerator<TrackPackage> eventGenerator;
 
+	private EventDispatcher dispatcher;
+
+	private final OfficeMetrics metrics = new OfficeMetrics();
+
+	private HeartbeatMonitor heartbeats;
+
+	private OfficeJournal journal;
+
+	// Parcels handed off to each neighbor that it has not yet passed on, by
+	// neighbor name, for reporting them lost if the neighbor fails.
+	private ConcurrentHashMap<String, Custody> custody = new ConcurrentHashMap<String, Custody>();
+
 	/**
 	 * Call this method to access the X coordinate of a GPSOffice object
 	 * 
@@ -85,6 +224,19 @@ public class GPSOffice implements GPSOfficeRef {
 		return officeName;
 	}
 
+	/**
+	 * Call this method to access the name, coordinates and epoch of a
+	 * GPSOffice object in a single remote call
+	 * 
+	 * @return Descriptor of the GPSOffice node
+	 * 
+	 * @exception RemoteException
+	 *                Thrown if a remote error occurred
+	 */
+	public OfficeDescriptor getDescriptor() throws RemoteException {
+		return descriptor;
+	}
+
 	/**
 	 * Construct a new GPSOffice object.
 	 * <P>
@@ -117,50 +269,210 @@ public class GPSOffice implements GPSOfficeRef {
 		officeName = args[2];
 		X = parseDouble(args[3], "X-Coordinate");
 		Y = parseDouble(args[4], "Y-Coordinate");
+		epoch = System.currentTimeMillis();
 
 		// Get a proxy for the Registry Server.
 		registry = new RegistryProxy(hostName, portNumber);
 
+		// The scheduled thread pool only fires timers; the examination and
+		// forwarding work itself runs in the forwarding engine's lanes.
 		threadPool = Executors.newSingleThreadScheduledExecutor();
+		forwarder = new ForwardingEngine();
 
 		// Prepare to generate remote events.
 		eventGenerator = new RemoteEventGenerator<TrackPackage>();
+		dispatcher = new EventDispatcher(eventGenerator, metrics);
+
+		// Watch the neighbors; failures and recoveries are handled in the
+		// office's forwarding lane, like registry events.
+		heartbeats = new HeartbeatMonitor(new HeartbeatMonitor.Listener() {
+			public void failed(final String name) {
+				forwarder.execute(name.hashCode(), new Runnable() {
+					public void run() {
+						neighborFailed(name);
+					}
+				});
+			}
+
+			public void unreachable(final String name) {
+				forwarder.execute(name.hashCode(), new Runnable() {
+					public void run() {
+						custodyLost(name);
+					}
+				});
+			}
+
+			public void recovered(final String name) {
+				forwarder.execute(name.hashCode(), new Runnable() {
+					public void run() {
+						officeOpened(name);
+					}
+				});
+			}
+		}, metrics);
 
 		// Export this GPSOffice node.
 		UnicastRemoteObject.exportObject(this, 0);
 
-		// Bind this GPSOffice node into the Registry Server.
 		try {
+			// Export a remote event listener object for receiving
+			// notifications from the Registry Server, so that each office
+			// that opens or closes later is folded into the neighbor set one
+			// at a time.
+			registryListener = new RegistryEventListener() {
+				public void report(long seqnum, final RegistryEvent event) {
+					metrics.increment(OfficeMetrics.Counter.REGISTRY_EVENTS);
+					Runnable task = new Runnable() {
+						public void run() {
+							if (event.objectWasBound()) {
+								officeOpened(event.objectName());
+							} else {
+								officeClosed(event.objectName());
+							}
+						}
+					};
+					forwarder.execute(event.objectName().hashCode(), task);
+				}
+			};
+			UnicastRemoteObject.exportObject(registryListener, 0);
+
+			// Tell the Registry Server to notify us when a GPSOffice object is
+			// bound or unbound.
+			registryFilter = new RegistryEventFilter().reportType("GPSOffice")
+					.reportBound().reportUnbound();
+			registryLease = registry.addEventListener(registryListener,
+					registryFilter);
+
+			// Fetches the offices that are already bound, so that an office
+			// ID no other office uses can be chosen before binding.
+			syncOfficeIndex();
+			Integer configuredId = Integer.getInteger("gps.officeId");
+			fixedOfficeId = configuredId != null;
+			int officeId = fixedOfficeId ? configuredId
+					: freeOfficeId(usedOfficeIds());
+			trackingNumbers = new TrackingNumberAllocator(officeId);
+			officeIdSettled = fixedOfficeId;
+
+			String journalDir = System.getProperty("gps.officeJournal");
+			if (journalDir != null && journalDir.length() > 0) {
+				journal = new OfficeJournal(new File(journalDir, officeName));
+			}
+			descriptor = new OfficeDescriptor(officeName, X, Y, epoch,
+					officeId, journal != null, fixedOfficeId);
+
+			// Bind this GPSOffice node into the Registry Server.
 			registry.bind(officeName, this);
 
-			// Fetches the list of nodes bound in the registry and updates the
-			// neighbor of each GPSOffice.
-			List<String> listOfOffices1 = registry.list();
-			Iterator<String> iter1 = listOfOffices1.iterator();
+			// Picks this office's neighbors among the offices already bound.
+			refreshNeighbors();
 
-			while (iter1.hasNext()) {
+			if (!fixedOfficeId) {
+				scheduleOfficeIdCheck();
+			}
 
-				GPSOfficeRef neighbor1 = (GPSOfficeRef) registry.lookup(iter1
-						.next());
-				neighbor1.updateNeighbors();
+			if (journal != null) {
+				recoverPackages();
 			}
 
-		} catch (AlreadyBoundException e) {
-			try {
-				UnicastRemoteObject.unexportObject(this, true);
-			} catch (NoSuchObjectException e1) {
+			scheduleStatsDump();
 
-			}
+		} catch (AlreadyBoundException e) {
+			unexport();
 			throw new IllegalArgumentException("GPSOffice(): <officeName> = "
 					+ officeName + " already exists");
-		} catch (RemoteException e) {
+		} catch (IOException e) {
+			unexport();
+			throw e;
+		} catch (IllegalStateException e) {
+			unexport();
+			throw e;
+		}
+	}
 
-			try {
-				UnicastRemoteObject.unexportObject(this, true);
-			} catch (NoSuchObjectException e1) {
+	/**
+	 * Unexports this node and its registry event listener after a failed
+	 * start-up.
+	 */
+	private void unexport() {
+		if (registryLease != null) {
+			registryLease.cancel();
+		}
+		try {
+			if (registryListener != null) {
+				UnicastRemoteObject.unexportObject(registryListener, true);
+			}
+		} catch (NoSuchObjectException e1) {
+
+		}
+		try {
+			UnicastRemoteObject.unexportObject(this, true);
+		} catch (NoSuchObjectException e1) {
+
+		}
+		threadPool.shutdown();
+		forwarder.shutdown();
+		heartbeats.shutdown();
+		if (journal != null) {
+			journal.close();
+		}
+	}
+
+	/**
+	 * Takes up again the packages this office held when its previous run
+	 * ended, as journalled.
+	 * 
+	 * @exception IOException
+	 *                Thrown if the journal cannot be read or written
+	 */
+	private void recoverPackages() throws IOException {
+		for (Parcel parcel : journal.recover()) {
+			journal.accepted(parcel);
+			metrics.increment(OfficeMetrics.Counter.RECOVERED);
+			examining.incrementAndGet();
+			accept(parcel);
+		}
+		journal.commitRecovery();
+	}
 
+	/**
+	 * Journals the acceptance of packages, if journalling is on, and waits
+	 * until it is on disk.
+	 * 
+	 * @param parcels
+	 *            Parcel[]
+	 * 
+	 * @exception RemoteException
+	 *                Thrown if the packages could not be journalled, so that
+	 *                the caller keeps them
+	 */
+	private void journal(Parcel... parcels) throws RemoteException {
+		if (journal == null) {
+			return;
+		}
+		long start = System.nanoTime();
+		try {
+			for (Parcel parcel : parcels) {
+				journal.accepted(parcel);
 			}
-			throw e;
+			journal.sync();
+		} catch (IOException e) {
+			throw new RemoteException("Cannot journal packages", e);
+		} finally {
+			metrics.recordSince(OfficeMetrics.Stage.JOURNAL_SYNC, start);
+		}
+	}
+
+	/**
+	 * Marks a package as no longer held by this node: delivered, handed off
+	 * or lost.
+	 * 
+	 * @param parcel
+	 *            Parcel
+	 */
+	private void release(Parcel parcel) {
+		holding.remove(parcel.packageID);
+		if (journal != null) {
+			journal.handedOff(parcel.packageID);
 		}
 	}
 
@@ -177,89 +489,417 @@ public class GPSOffice implements GPSOfficeRef {
 	 *                Thrown if a remote error occurred
 	 */
 	public double calculateDistance(GPSOfficeRef obj) throws RemoteException {
-		if (this.getOfficeName() == obj.getOfficeName())
+		OfficeDescriptor other = obj.getDescriptor();
+		if (descriptor.equals(other))
 			return 0;
-		else {
-			double x = obj.getX();
-			double y = obj.getY();
+		else
 			// Calculates the Euclidean distance.
-			double distance = Math.sqrt(((this.X - x) * (this.X - x))
-					+ ((this.Y - y) * (this.Y - y)));
-
-			return distance;
-		}
+			return other.distance(this.X, this.Y);
 	}
 
 	/**
-	 * Call this method to update the neighbor list of a node
+	 * Call this method to update the neighbor list of a node. The local
+	 * office index is brought in line with the Registry Server, fetching the
+	 * location of newly bound offices only, and the neighbors are then chosen
+	 * by a local nearest-neighbor query.
 	 * 
 	 * @exception RemoteException
 	 *                Thrown if a remote error occurred
 	 */
 	public void updateNeighbors() throws RemoteException {
+		syncOfficeIndex();
+		refreshNeighbors();
+	}
 
-		neighborsTable = new HashMap<String, Double[]>();
-
-		double distValue;
+	/**
+	 * Brings the local office index in line with the Registry Server,
+	 * fetching the descriptor of newly bound offices only.
+	 * 
+	 * @exception RemoteException
+	 *                Thrown if a remote error occurred
+	 */
+	private void syncOfficeIndex() throws RemoteException {
 
 		List<String> listOfOffices = registry.list();
-		try {
-			Double maxDistance = 0.0;
-			Object removeNodeName = null;
 
-			Iterator<String> iter = listOfOffices.iterator();
+		// Forget offices that are no longer bound.
+		officeIndex.retainAll(listOfOffices);
 
-			while (iter.hasNext()) {
-				GPSOfficeRef neighbor = (GPSOfficeRef) registry.lookup(iter
-						.next());
+		Iterator<String> iter = listOfOffices.iterator();
 
-				distValue = this.calculateDistance(neighbor);
+		while (iter.hasNext()) {
+			String name = iter.next();
+			if (name.equals(officeName) || officeIndex.contains(name)) {
+				continue;
+			}
+			try {
+				GPSOfficeRef neighbor = lookup(name);
+				officeIndex.put(new OfficeIndex.Entry(neighbor.getDescriptor(),
+						neighbor));
+			} catch (NotBoundException ex) {
+			} catch (RemoteException ex) {
+				// The office went away while we were looking at it.
+			}
+		}
+	}
 
-				// Adds the first 3 the neighbors.
-				if ((distValue != 0) && (neighborsTable.size() < 3)) {
+	/**
+	 * Call this method to find the office IDs of the indexed offices
+	 * 
+	 * @return A new set of office IDs
+	 */
+	private HashSet<Integer> usedOfficeIds() {
+		HashSet<Integer> used = new HashSet<Integer>();
+		for (OfficeIndex.Entry entry : officeIndex.entries()) {
+			used.add(entry.officeId);
+		}
+		return used;
+	}
 
-					Double[] tempXY = new Double[3];
-					tempXY[0] = neighbor.getX();
-					tempXY[1] = neighbor.getY();
-					tempXY[2] = distValue;
+	/**
+	 * Chooses an office ID that is not used, probing from a hash of this
+	 * office's name.
+	 * 
+	 * @param used
+	 *            Office IDs of other offices
+	 * 
+	 * @return Office ID for tracking numbers
+	 * 
+	 * @exception IllegalStateException
+	 *                (unchecked exception) Thrown if every office ID is used
+	 */
+	private int freeOfficeId(HashSet<Integer> used) {
+		int span = TrackingNumberAllocator.MAX_OFFICE_ID + 1;
+		int start = (officeName.hashCode() & 0x7FFFFFFF) % span;
+		for (int i = 0; i < span; ++i) {
+			int candidate = (start + i) % span;
+			if (!used.contains(candidate)) {
+				return candidate;
+			}
+		}
+		throw new IllegalStateException("GPSOffice(): all " + span
+				+ " office IDs are in use");
+	}
 
-					neighborsTable.put(neighbor.getOfficeName(), tempXY);
+	/**
+	 * Call this method to find out if this office must give up its office ID
+	 * to another office using the same one: this office's ID is not settled
+	 * yet, and the other's is, or the other office is older.
+	 * 
+	 * @param other
+	 *            Descriptor of the other office
+	 * 
+	 * @return True if this office must move to another office ID
+	 */
+	private boolean yieldsOfficeId(OfficeDescriptor other) {
+		OfficeDescriptor mine = descriptor;
+		if (officeIdSettled || mine == null || other.officeId != mine.officeId) {
+			return false;
+		}
+		return other.settled
+				|| other.epoch < mine.epoch
+				|| (other.epoch == mine.epoch && other.name
+						.compareTo(officeName) < 0);
+	}
 
-				}
-				// Removes the neighbor that has maximum distance
-				else if ((distValue != 0) && (neighborsTable.size() == 3)) {
+	/**
+	 * Moves this office to an office ID that is not used. If there is none,
+	 * the office ID will never settle, and every request for tracking numbers
+	 * fails. Must be called with officeIdLock held.
+	 * 
+	 * @param used
+	 *            Office IDs of other offices
+	 */
+	private void moveOfficeId(HashSet<Integer> used) {
+		++officeIdMoves;
+		OfficeDescriptor mine = descriptor;
+		try {
+			int officeId = freeOfficeId(used);
+			trackingNumbers.setOfficeId(officeId);
+			descriptor = new OfficeDescriptor(officeName, X, Y, epoch,
+					officeId, mine.journaled, false);
+		} catch (IllegalStateException e) {
+			officeIdFailure = e.getMessage();
+			officeIdLock.notifyAll();
+		}
+	}
 
-					maxDistance = 0.0;
-					Set<String> nodes = neighborsTable.keySet();
+	/**
+	 * Moves this office to a free office ID if a newly bound office uses the
+	 * same one and this office must give it up.
+	 * 
+	 * @param other
+	 *            Descriptor of the other office
+	 */
+	private void resolveOfficeIdConflict(OfficeDescriptor other) {
+		synchronized (officeIdLock) {
+			if (officeIdFailure != null || !yieldsOfficeId(other)) {
+				return;
+			}
+			moveOfficeId(usedOfficeIds());
+		}
+		scheduleOfficeIdCheck();
+	}
 
-					Iterator<String> nodeIterator = nodes.iterator();
+	/**
+	 * Schedules the check that settles the office ID, once it has been
+	 * published for OFFICE_ID_SETTLE_MILLIS without being moved; an office
+	 * that started about the same time and chose the same ID has then bound
+	 * and been seen. A move schedules a new check and voids this one.
+	 */
+	private void scheduleOfficeIdCheck() {
+		final int moves;
+		synchronized (officeIdLock) {
+			moves = officeIdMoves;
+		}
+		threadPool.schedule(new Runnable() {
+			public void run() {
+				forwarder.execute(officeName.hashCode(), new Runnable() {
+					public void run() {
+						checkOfficeId(moves);
+					}
+				});
+			}
+		}, OFFICE_ID_SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+	}
 
-					while (nodeIterator.hasNext()) {
+	/**
+	 * Compares the office ID with the current one of every bound office. If
+	 * none is in the way, the ID is settled and held requests for tracking
+	 * numbers go ahead; otherwise the office moves and checks again later. An
+	 * office that does not answer is taken to be in the way.
+	 * 
+	 * @param moves
+	 *            Number of moves when the check was scheduled
+	 */
+	private void checkOfficeId(int moves) {
+		try {
+			syncOfficeIndex();
+		} catch (RemoteException e) {
+			// The Registry Server did not answer; try again later.
+			scheduleOfficeIdCheck();
+			return;
+		}
+		HashSet<Integer> used = new HashSet<Integer>();
+		boolean conflict = false;
+		for (OfficeIndex.Entry entry : officeIndex.entries()) {
+			OfficeDescriptor other;
+			try {
+				other = entry.office.getDescriptor();
+			} catch (RemoteException e) {
+				other = new OfficeDescriptor(entry.name, entry.x, entry.y,
+						entry.epoch, entry.officeId, entry.journaled, true);
+			}
+			used.add(other.officeId);
+			conflict |= yieldsOfficeId(other);
+		}
+		synchronized (officeIdLock) {
+			if (moves != officeIdMoves || officeIdFailure != null) {
+				return;
+			}
+			if (!conflict) {
+				OfficeDescriptor mine = descriptor;
+				descriptor = new OfficeDescriptor(officeName, X, Y, epoch,
+						mine.officeId, mine.journaled, true);
+				officeIdSettled = true;
+				officeIdLock.notifyAll();
+				return;
+			}
+			moveOfficeId(used);
+		}
+		scheduleOfficeIdCheck();
+	}
 
-						Object nodeName = nodeIterator.next();
+	/**
+	 * Waits until the office ID is settled, so that no tracking number is
+	 * issued under an ID the office may still give up.
+	 * 
+	 * @exception RemoteException
+	 *                Thrown if no office ID is free, or the calling thread is
+	 *                interrupted
+	 */
+	private void awaitOfficeId() throws RemoteException {
+		if (officeIdSettled) {
+			return;
+		}
+		synchronized (officeIdLock) {
+			while (!officeIdSettled && officeIdFailure == null) {
+				try {
+					officeIdLock.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RemoteException(
+							"Interrupted while the office ID settles");
+				}
+			}
+			if (officeIdFailure != null) {
+				throw new RemoteException(officeIdFailure);
+			}
+		}
+	}
 
-						Double[] nodeValues = neighborsTable.get(nodeName);
-						if (nodeValues[2] > maxDistance) {
-							maxDistance = nodeValues[2];
-							removeNodeName = nodeName;
-						}
-					}
-					// Replaces the neighbor node having maximum distance
-					if (distValue < maxDistance) {
+	/**
+	 * Adds a newly bound office to the local office index. The neighbor table
+	 * is rebuilt only if the new office is closer than the current farthest
+	 * neighbor.
+	 * 
+	 * @param name
+	 *            Name of the office that was bound
+	 */
+	private void officeOpened(String name) {
+		if (name.equals(officeName)) {
+			return;
+		}
+		OfficeDescriptor opened;
+		OfficeIndex.Entry entry;
+		try {
+			GPSOfficeRef office = lookup(name);
+			opened = office.getDescriptor();
+			entry = new OfficeIndex.Entry(opened, office);
+		} catch (NotBoundException ex) {
+			return;
+		} catch (RemoteException ex) {
+			return;
+		}
+		officeIndex.put(entry);
+		resolveOfficeIdConflict(opened);
+		Custody watched = custody.get(name);
+		if (watched != null && watched.resume(entry.office)) {
+			// Back after a restart, or after being only slow.
+			pollCustody(name, watched, CUSTODY_POLL_MILLIS);
+		}
 
-						Double[] tempXY = new Double[3];
-						tempXY[0] = neighbor.getX();
-						tempXY[1] = neighbor.getY();
-						tempXY[2] = distValue;
+		NeighborTable table = neighborsTable;
+		if (table.contains(name) || table.wouldTake(entry.distance(X, Y))) {
+			refreshNeighbors();
+		}
+	}
 
-						neighborsTable.put(neighbor.getOfficeName(), tempXY);
-						neighborsTable.remove(removeNodeName);
-					}
+	/**
+	 * Removes an unbound office from the local office index, and reports the
+	 * packages in its custody as lost by it; if the office keeps a journal,
+	 * only once it has not been bound again within the grace period. The
+	 * neighbor table is rebuilt only if the office was one of this node's
+	 * neighbors.
+	 * 
+	 * @param name
+	 *            Name of the office that was unbound
+	 */
+	private void officeClosed(final String name) {
+		heartbeats.forget(name);
+		officeIndex.remove(name);
+		if (neighborsTable.contains(name)) {
+			refreshNeighbors();
+		}
+		final Custody watched = custody.get(name);
+		if (watched == null) {
+			return;
+		}
+		if (!watched.journaled()) {
+			reportCustodyLost(name, watched.clear());
+			return;
+		}
+		// A journaled office takes its packages up again if it is restarted
+		// in time.
+		scheduleForward(name.hashCode(), new Runnable() {
+			public void run() {
+				if (!officeIndex.contains(name)) {
+					reportCustodyLost(name, watched.clear());
 				}
 			}
-		
-		} catch (NotBoundException ex) {
-			ex.printStackTrace();
+		}, CUSTODY_GRACE_MILLIS);
+	}
+
+	/**
+	 * Removes an office that stopped answering heartbeats from the local
+	 * office index, replacing it in the neighbor table if it was a neighbor.
+	 * The office may only be slow, so the packages in its custody are left
+	 * alone. The office is added back if it answers again.
+	 * 
+	 * @param name
+	 *            Name of the failed office
+	 */
+	private void neighborFailed(String name) {
+		officeIndex.remove(name);
+		if (neighborsTable.contains(name)) {
+			refreshNeighbors();
+		}
+	}
+
+	/**
+	 * Reports the packages in the custody of an office that is known to be
+	 * gone as lost by it. If the office keeps a journal, the report waits
+	 * until the office is unbound; see officeClosed().
+	 * 
+	 * @param name
+	 *            Name of the office
+	 */
+	private void custodyLost(String name) {
+		Custody watched = custody.get(name);
+		if (watched != null && !watched.journaled()) {
+			reportCustodyLost(name, watched.clear());
+		}
+	}
+
+	/**
+	 * Rebuilds the neighbor table from the <I>k</I> offices in the local
+	 * office index that are closest to this node.
+	 */
+	private synchronized void refreshNeighbors() {
+		NeighborTable table = new NeighborTable(fanOut);
+		for (OfficeIndex.Entry neighbor : officeIndex.nearest(X, Y, fanOut,
+				officeName)) {
+			table.offer(neighbor, X, Y);
+		}
+		neighborsTable = table;
+		heartbeats.watch(table.refs());
+	}
+
+	/**
+	 * Returns the remote reference of the given neighbor, resolved when the
+	 * neighbor table was built. Falls back to the office index, which also
+	 * holds the offices on a source route, and then to the Registry Server.
+	 * 
+	 * @param name
+	 *            String
+	 * 
+	 * @return Remote reference to the neighbor
+	 * 
+	 * @exception NotBoundException
+	 *                Thrown if the neighbor is no longer bound
+	 * @exception RemoteException
+	 *                Thrown if a remote error occurred
+	 */
+	private GPSOfficeRef neighborRef(String name) throws NotBoundException,
+			RemoteException {
+		GPSOfficeRef ref = neighborsTable.ref(name);
+		if (ref == null) {
+			OfficeIndex.Entry entry = officeIndex.get(name);
+			ref = entry != null ? entry.office : lookup(name);
+		}
+		return ref;
+	}
+
+	/**
+	 * Looks up a GPSOffice node in the Registry Server.
+	 * 
+	 * @param name
+	 *            String
+	 * 
+	 * @return Remote reference to the node
+	 * 
+	 * @exception NotBoundException
+	 *                Thrown if the node is not bound
+	 * @exception RemoteException
+	 *                Thrown if a remote error occurred
+	 */
+	private GPSOfficeRef lookup(String name) throws NotBoundException,
+			RemoteException {
+		long start = System.nanoTime();
+		try {
+			return (GPSOfficeRef) registry.lookup(name);
+		} finally {
+			metrics.recordSince(OfficeMetrics.Stage.REGISTRY_LOOKUP, start);
 		}
 	}
 
@@ -280,19 +920,15 @@ public class GPSOffice implements GPSOfficeRef {
 	 */
 	public double destDistance(double destX1, double destY1)
 			throws RemoteException {
-		double x = this.getX();
-		double y = this.getY();
-		String myName = this.getOfficeName();
-
-		double distance = Math.sqrt(((destX1 - x) * (destX1 - x))
-				+ ((destY1 - y) * (destY1 - y)));
-
-		return distance;
+		metrics.increment(OfficeMetrics.Counter.DEST_DISTANCE_CALLS);
+		return descriptor.distance(destX1, destY1);
 	}
 
 	/**
 	 * This method is called by thread pools to route the package to the next
-	 * nearest neighbor node in the GPSOffice system
+	 * nearest neighbor node in the GPSOffice system. The package is accepted
+	 * into the examination stage and this method returns at once; the package
+	 * is forwarded by the thread pool when its examination is over.
 	 * 
 	 * @param packageNum
 	 *            long
@@ -307,197 +943,994 @@ public class GPSOffice implements GPSOfficeRef {
 	 *            RemoteEventListener<TrackPackage>
 	 * 
 	 * @exception RemoteException
-	 *                Thrown if a remote error occurred
+	 *                Thrown if a remote error occurred, or if this node has
+	 *                no credits left
 	 */
 	public void route(long packageNum, double destX, double destY,
 			RemoteEventListener<TrackPackage> nodeListener)
 			throws RemoteException {
+		route(packageNum, destX, destY, ServiceClass.STANDARD, nodeListener);
+	}
 
-		double nearestXY = 0.0;
-		String tempString;
-		GPSOfficeRef nodeTemp = null;
-		GPSOfficeRef nodeTempNearest;
-		String nearestNeighbor = null;
-		String finalNearestNeighbour = null;
-
-		final double destinationX = destX;
-		final double destinationY = destY;
-		final long currentPackageNumber = packageNum;
-		final String currentOfficeName = this.getOfficeName();
-		// Report a TrackPackage to Headquarters remote event listeners.
-		eventGenerator.reportEvent(new TrackPackage("Package number "
-				+ packageNum + " arrived at " + this.getOfficeName()
-				+ " office", packageNum, 0));
-		// Report a TrackPackage event to Customer remote event listeners.
-		nodeListener.report(0, new TrackPackage("Package number "
-				+ currentPackageNumber + " arrived at " + this.getOfficeName()
-				+ " office", currentPackageNumber, 0));
-
-		try {
-			Thread.sleep(3000);
-		} catch (InterruptedException e2) {
-
+	/**
+	 * Routes a package of the given service class; see route(long, double,
+	 * double, RemoteEventListener).
+	 * 
+	 * @param packageNum
+	 *            long
+	 * 
+	 * @param destX
+	 *            double
+	 * 
+	 * @param destY
+	 *            double
+	 * 
+	 * @param service
+	 *            ServiceClass
+	 * 
+	 * @param nodeListener
+	 *            RemoteEventListener<TrackPackage>
+	 * 
+	 * @exception RemoteException
+	 *                Thrown if a remote error occurred, or if this node has
+	 *                no credits left
+	 */
+	public void route(long packageNum, double destX, double destY,
+			ServiceClass service,
+			RemoteEventListener<TrackPackage> nodeListener)
+			throws RemoteException {
+		Parcel parcel = new Parcel(packageNum, destX, destY, nodeListener,
+				service);
+		if (admit(parcel) == 0) {
+			metrics.increment(OfficeMetrics.Counter.REFUSED);
+			throw new RemoteException("GPSOffice " + officeName
+					+ " has no credits left");
 		}
+		admitted(parcel);
+	}
 
-		double dist1 = this.destDistance(destX, destY);
-		nearestXY = dist1;
-		Set<String> myNeighbors = this.neighborsTable.keySet();
+	/**
+	 * This method is called by a neighboring GPSOffice node to hand over
+	 * several packages in one call. As many packages as the admission budget
+	 * allows are accepted into the examination stage, as if route() had been
+	 * called for each of them; the others are refused.
+	 * 
+	 * @param parcels
+	 *            Parcel[]
+	 * 
+	 * @return How many parcels were taken, and this node's credits
+	 * 
+	 * @exception RemoteException
+	 *                Thrown if a remote error occurred
+	 */
+	public BatchReceipt routeBatch(Parcel[] parcels) throws RemoteException {
+		int accepted = admit(parcels);
+		if (accepted < parcels.length) {
+			metrics.add(OfficeMetrics.Counter.REFUSED, parcels.length
+					- accepted);
+			parcels = Arrays.copyOf(parcels, accepted);
+		}
+		admitted(parcels);
+		return new BatchReceipt(accepted, credits());
+	}
+
+	/**
+	 * Reserves room in the admission budget for as many of the given parcels
+	 * as fit, from the first on. The room is given back when a parcel's
+	 * examination is over.
+	 * 
+	 * @param parcels
+	 *            Parcel[]
+	 * 
+	 * @return Number of parcels admitted
+	 */
+	private int admit(Parcel... parcels) {
+		synchronized (admission) {
+			int admitted = Math.min(parcels.length, credits());
+			examining.addAndGet(admitted);
+			return admitted;
+		}
+	}
+
+	/**
+	 * Journals and accepts admitted parcels. If they cannot be journalled,
+	 * their room in the budget is given back.
+	 * 
+	 * @param parcels
+	 *            Parcel[]
+	 * 
+	 * @exception RemoteException
+	 *                Thrown if the parcels could not be journalled
+	 */
+	private void admitted(Parcel... parcels) throws RemoteException {
+		try {
+			journal(parcels);
+		} catch (RemoteException e) {
+			examining.addAndGet(-parcels.length);
+			throw e;
+		}
+		for (Parcel parcel : parcels) {
+			accept(parcel);
+		}
+	}
+
+	/**
+	 * Call this method to find how many more packages neighbors may hand over
+	 * 
+	 * @return Room left in the admission budget
+	 */
+	private int credits() {
+		return Math.max(0, ADMISSION_BUDGET - examining.get());
+	}
+
+	/**
+	 * Accepts a package into the examination stage. The package is forwarded
+	 * by the forwarding engine once the examination is over; no thread is
+	 * held in the meantime.
+	 * 
+	 * @param parcel
+	 *            Parcel
+	 */
+	private void accept(final Parcel parcel) {
+		parcel.arrivedNanos = System.nanoTime();
+		metrics.increment(OfficeMetrics.Counter.ACCEPTED);
+		reportEvent(parcel.listener, event(parcel, TrackPackage.Kind.ARRIVED,
+				officeName));
+
+		holding.put(parcel.packageID, Boolean.TRUE);
+		Runnable dispatchTask = new Runnable() {
+			public void run() {
+				dispatch(parcel);
+			}
+		};
+		scheduleForward(parcel.packageID, parcel.service, dispatchTask,
+				INSPECTION_MILLIS);
+	}
+
+	/**
+	 * Call this method to find out which of the given packages are still held
+	 * by this node, that is, are being examined or have not yet been handed
+	 * off
+	 * 
+	 * @param packageNums
+	 *            long[]
+	 * 
+	 * @return The package numbers that are still held by this node
+	 * 
+	 * @exception RemoteException
+	 *                Thrown if a remote error occurred
+	 */
+	public long[] heldPackages(long[] packageNums) throws RemoteException {
+		long[] held = new long[packageNums.length];
+		int count = 0;
+		for (long packageNum : packageNums) {
+			if (holding.containsKey(packageNum)) {
+				held[count++] = packageNum;
+			}
+		}
+		return Arrays.copyOf(held, count);
+	}
+
+	/**
+	 * Delivers an examined package, or queues it for the neighbor that is
+	 * closest to its destination.
+	 * 
+	 * @param parcel
+	 *            Parcel
+	 */
+	private void dispatch(Parcel parcel) {
+		examining.decrementAndGet();
+		metrics.recordSince(OfficeMetrics.Stage.INSPECTION,
+				parcel.arrivedNanos);
+		String finalNearestNeighbour;
+		Parcel outgoing = parcel;
+		if (parcel.route != null) {
+			finalNearestNeighbour = parcel.nextHop();
+			if (finalNearestNeighbour == null
+					|| officeIndex.contains(finalNearestNeighbour)) {
+				outgoing = parcel.advance();
+			} else {
+				// The route's next office has closed; route greedily from
+				// here on.
+				metrics.increment(OfficeMetrics.Counter.SOURCE_ROUTE_FALLBACKS);
+				outgoing = parcel.greedy();
+				finalNearestNeighbour = chooseNextHop(this.neighborsTable,
+						parcel.destX, parcel.destY);
+			}
+		} else {
+			finalNearestNeighbour = chooseNextHop(this.neighborsTable,
+					parcel.destX, parcel.destY);
+		}
 
-		Iterator<String> myNeighborsIterator = myNeighbors.iterator();
+		if (finalNearestNeighbour == null) {
 
-		// Finds the neighbor that is closest to the destination
-		while (myNeighborsIterator.hasNext()) {
-			tempString = (String) myNeighborsIterator.next();
+			release(parcel);
+			metrics.increment(OfficeMetrics.Counter.DELIVERED);
+			metrics.recordSince(OfficeMetrics.Stage.HOP, parcel.arrivedNanos);
+			reportEvent(parcel.listener, event(parcel,
+					TrackPackage.Kind.DELIVERED, officeName));
 
+		} else {
+
+			reportEvent(parcel.listener, event(parcel,
+					TrackPackage.Kind.DEPARTED, officeName));
+
+			GPSOfficeRef nextNode;
 			try {
-				nodeTemp = (GPSOfficeRef) registry.lookup(tempString);
+				nextNode = neighborRef(finalNearestNeighbour);
 			} catch (NotBoundException e) {
+				release(parcel);
+				packageLost(parcel, officeName);
+				return;
+			} catch (RemoteException e) {
+				release(parcel);
+				packageLost(parcel, officeName);
+				return;
 			}
+			enqueue(finalNearestNeighbour, nextNode, outgoing);
+		}
+	}
 
-			double newDist = nodeTemp.destDistance(destX, destY);
+	/**
+	 * Gives a package originating at this node its route, if source routing
+	 * is on.
+	 * 
+	 * @param parcel
+	 *            Parcel
+	 * 
+	 * @return The parcel, with its route if source routing is on
+	 */
+	private Parcel originate(Parcel parcel) {
+		if (!sourceRouting) {
+			return parcel;
+		}
+		metrics.increment(OfficeMetrics.Counter.SOURCE_ROUTED);
+		return new Parcel(parcel.packageID, parcel.destX, parcel.destY,
+				parcel.listener, parcel.service,
+				sourceRoute(parcel.destX, parcel.destY), 0);
+	}
 
-			if (nearestXY > newDist) {
-				nearestXY = newDist;
-				nodeTempNearest = nodeTemp;
-				nearestNeighbor = nodeTempNearest.getOfficeName();
+	/**
+	 * Computes the route greedy routing would take from this node to a
+	 * destination, from the office index. The neighbors of each office on
+	 * the way are the <I>k</I> indexed offices, or this node, closest to it.
+	 * 
+	 * @param destX
+	 *            double
+	 * 
+	 * @param destY
+	 *            double
+	 * 
+	 * @return Names of the offices to visit after this node; the last one
+	 *         delivers the package
+	 */
+	private String[] sourceRoute(double destX, double destY) {
+		ArrayList<String> route = new ArrayList<String>();
+		String name = officeName;
+		double x = X;
+		double y = Y;
+		double dist = descriptor.distance(destX, destY);
+		int limit = officeIndex.size();
+		while (route.size() < limit) {
+			List<OfficeIndex.Entry> neighbors = officeIndex.nearest(x, y,
+					fanOut, name);
+			if (!name.equals(officeName)) {
+				// This node is not in its own index but may be a neighbor,
+				// displacing the farthest indexed one.
+				double self = Math.hypot(X - x, Y - y);
+				if (neighbors.size() == fanOut
+						&& self < neighbors.get(fanOut - 1).distance(x, y)) {
+					neighbors = neighbors.subList(0, fanOut - 1);
+				}
+			}
+			OfficeIndex.Entry best = null;
+			for (OfficeIndex.Entry neighbor : neighbors) {
+				double d = neighbor.distance(destX, destY);
+				if (d < dist) {
+					dist = d;
+					best = neighbor;
+				}
+			}
+			if (best == null) {
+				break;
+			}
+			route.add(best.name);
+			name = best.name;
+			x = best.x;
+			y = best.y;
+		}
+		return route.toArray(new String[route.size()]);
+	}
 
+	/**
+	 * Chooses the next hop of a package, from the next hop cache if the
+	 * destination's cell is cached for the given neighbor table. Otherwise
+	 * the next hop is computed, and the cell is cached if every corner of it
+	 * has the same next hop.
+	 * 
+	 * @param table
+	 *            Neighbor table
+	 * 
+	 * @param destX
+	 *            double
+	 * 
+	 * @param destY
+	 *            double
+	 * 
+	 * @return Name of the neighbor, or null if no neighbor is closer to the
+	 *         destination than this node
+	 */
+	private String chooseNextHop(NeighborTable table,
+			double destX, double destY) {
+		long cell = hopCache.cellOf(destX, destY);
+		String hop = hopCache.lookup(cell, table);
+		if (hop != NextHopCache.MISS) {
+			metrics.increment(OfficeMetrics.Counter.HOP_CACHE_HITS);
+			return hop;
+		}
+		metrics.increment(OfficeMetrics.Counter.HOP_CACHE_MISSES);
+		hop = nextHop(table, descriptor.distance(destX, destY), destX, destY);
+		if (hopCache.enabled()) {
+			double x0 = hopCache.lowerEdge(destX);
+			double y0 = hopCache.lowerEdge(destY);
+			double size = hopCache.cellSize();
+			if (sameHop(hop, cornerHop(table, x0, y0))
+					&& sameHop(hop, cornerHop(table, x0 + size, y0))
+					&& sameHop(hop, cornerHop(table, x0, y0 + size))
+					&& sameHop(hop, cornerHop(table, x0 + size, y0 + size))) {
+				hopCache.store(cell, table, hop);
 			}
-			finalNearestNeighbour = nearestNeighbor;
 		}
+		return hop;
+	}
 
-		if (nearestXY == dist1) {
+	private String cornerHop(NeighborTable table, double x,
+			double y) {
+		return nextHop(table, descriptor.distance(x, y), x, y);
+	}
 
-			// Report a TrackPackage to Headquarters remote event listeners.
-			eventGenerator
-					.reportEvent(new TrackPackage("Package number "
-							+ packageNum + " delivered from "
-							+ this.getOfficeName() + " office to (" + destX
-							+ "," + destY + ")", packageNum, 2));
-			// Report a TrackPackage event to Customer remote event listeners.
-			try {
-				nodeListener.report(0,
-						new TrackPackage("Package number "
-								+ currentPackageNumber + " delivered from "
-								+ this.getOfficeName() + " office to (" + destX
-								+ "," + destY + ")", currentPackageNumber, 2));
-			} catch (Exception e) {
+	private static boolean sameHop(String a, String b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
+	/**
+	 * Finds the neighbor that is closest to the destination, using the
+	 * neighbor coordinates cached in the neighbor table
+	 * 
+	 * @param neighbors
+	 *            Neighbor table
+	 * 
+	 * @param ownDistance
+	 *            Distance from this node to the destination
+	 * 
+	 * @param destX
+	 *            double
+	 * 
+	 * @param destY
+	 *            double
+	 * 
+	 * @return Name of the neighbor, or null if no neighbor is closer to the
+	 *         destination than this node
+	 */
+	static String nextHop(NeighborTable neighbors, double ownDistance,
+			double destX, double destY) {
+		int nearest = neighbors.nearest(ownDistance, destX, destY);
+		return nearest < 0 ? null : neighbors.name(nearest);
+	}
 
+	/**
+	 * Ranks the neighbors that are closer to the destination than this node,
+	 * closest first. The first candidate is the one nextHop() chooses.
+	 * 
+	 * @param neighbors
+	 *            Neighbor table
+	 * 
+	 * @param ownDistance
+	 *            Distance from this node to the destination
+	 * 
+	 * @param destX
+	 *            double
+	 * 
+	 * @param destY
+	 *            double
+	 * 
+	 * @return Names of the candidate neighbors
+	 */
+	static List<String> candidates(NeighborTable neighbors,
+			double ownDistance, double destX, double destY) {
+		int[] ranked = new int[neighbors.size()];
+		double[] dist = new double[neighbors.size()];
+		int n = 0;
+		for (int i = 0; i < neighbors.size(); ++i) {
+			double d = neighbors.distance(i, destX, destY);
+			if (ownDistance > d) {
+				// Insertion sort; there are only k neighbors.
+				int j = n++;
+				while (j > 0 && dist[j - 1] > d) {
+					dist[j] = dist[j - 1];
+					ranked[j] = ranked[j - 1];
+					--j;
+				}
+				dist[j] = d;
+				ranked[j] = i;
 			}
+		}
+		ArrayList<String> names = new ArrayList<String>(n);
+		for (int j = 0; j < n; ++j) {
+			names.add(neighbors.name(ranked[j]));
+		}
+		return names;
+	}
 
-		} else {
+	/**
+	 * Queues a parcel that the given neighbor could not take for the next
+	 * candidate neighbor, if there is one left to try.
+	 * 
+	 * @param parcel
+	 *            Parcel
+	 * 
+	 * @param failed
+	 *            Name of the neighbor that could not take it
+	 * 
+	 * @return True if the parcel was queued, false if it has no candidate
+	 *         left
+	 */
+	private boolean failover(Parcel parcel, String failed) {
+		if (parcel.tried == null) {
+			parcel.tried = new HashSet<String>();
+		}
+		parcel.tried.add(failed);
+		if (parcel.tried.size() > FAILOVER_ATTEMPTS) {
+			return false;
+		}
+		NeighborTable table = neighborsTable;
+		for (String candidate : candidates(table,
+				descriptor.distance(parcel.destX, parcel.destY), parcel.destX,
+				parcel.destY)) {
+			GPSOfficeRef ref = table.ref(candidate);
+			if (ref == null || parcel.tried.contains(candidate)) {
+				continue;
+			}
+			// A source route is no good past a failed hop.
+			enqueue(candidate, ref, parcel.route != null ? parcel.greedy()
+					: parcel);
+			return true;
+		}
+		return false;
+	}
 
-			// Report a TrackPackage to Headquarters remote event listeners.
-			eventGenerator.reportEvent(new TrackPackage("Package number "
-					+ packageNum + " departed from " + this.getOfficeName()
-					+ " office", packageNum, 1));
-			// Report a TrackPackage event to Customer remote event listeners.
-			nodeListener.report(0,
-					new TrackPackage("Package number " + currentPackageNumber
-							+ " departed from " + this.getOfficeName()
-							+ " office", currentPackageNumber, 1));
+	/**
+	 * Queues a parcel in the outbound buffer of the given neighbor. The buffer
+	 * is flushed right away when it is full, or shortly after its first parcel
+	 * arrived.
+	 * 
+	 * @param neighborName
+	 *            String
+	 * 
+	 * @param nextNode
+	 *            GPSOfficeRef
+	 * 
+	 * @param parcel
+	 *            Parcel
+	 */
+	private void enqueue(String neighborName, GPSOfficeRef nextNode,
+			Parcel parcel) {
+		OutboundBuffer buffer = outboundBuffers.get(neighborName);
+		if (buffer == null) {
+			OutboundBuffer newBuffer = new OutboundBuffer(neighborName,
+					nextNode);
+			buffer = outboundBuffers.putIfAbsent(neighborName, newBuffer);
+			if (buffer == null) {
+				buffer = newBuffer;
+			}
+		}
 
-			try {
-				final GPSOfficeRef nextNode = (GPSOfficeRef) registry
-						.lookup(finalNearestNeighbour);
-				final String nextNodeName = nextNode.getOfficeName();
-				final RemoteEventListener<TrackPackage> nodeListener1 = nodeListener;
+		final OutboundBuffer buffer1 = buffer;
+		switch (buffer.add(parcel, nextNode)) {
+		case OutboundBuffer.FULL:
+			flush(buffer);
+			break;
+		case OutboundBuffer.FIRST:
+			scheduleForward(neighborName.hashCode(), new Runnable() {
+				public void run() {
+					flush(buffer1);
+				}
+			}, OutboundBuffer.LINGER_MILLIS);
+			break;
+		default:
+			break;
+		}
+	}
 
-				// Assigns the task of forwarding the package to a new thread
-				threadPool.execute(new Runnable() {
-					public void run() {
+	/**
+	 * Hands the parcels in an outbound buffer that the neighbor has credits
+	 * for to the neighbor in one remote call. If the call fails, the parcels
+	 * fail over to the next candidate neighbor, and those with no candidate
+	 * left are reported lost by this office. If hedging is on and the call is
+	 * slow, the parcels are also sent to the next candidate. Parcels the
+	 * neighbor refuses go back into the buffer, or to the next candidate once
+	 * they have waited long enough, and a later flush is scheduled for the
+	 * parcels left in the buffer.
+	 * 
+	 * @param buffer
+	 *            OutboundBuffer
+	 */
+	private void flush(OutboundBuffer buffer) {
+		try {
+			send(buffer);
+		} finally {
+			scheduleRetry(buffer);
+		}
+	}
 
-						// Forwards the package to nearest neighbor node or
-						// destination whichever is closest
-						try {
-							nextNode.route(currentPackageNumber, destinationX,
-									destinationY, nodeListener1);
-						} catch (RemoteException e) {
-
-							try {
-
-								// Report a TrackPackage to Headquarters remote
-								// event listeners.
-								eventGenerator.reportEvent(new TrackPackage(
-										"Package number "
-												+ currentPackageNumber
-												+ " departed from "
-												+ nextNodeName + " office",
-										currentPackageNumber, 1));
-								// Report a TrackPackage event to Customer
-								// remote event listeners.
-								nodeListener1.report(0, new TrackPackage(
-										"Package number "
-												+ currentPackageNumber
-												+ " departed from "
-												+ nextNodeName + " office",
-										currentPackageNumber, 1));
-
-								// Report a TrackPackage to Headquarters remote
-								// event listeners.
-								eventGenerator.reportEvent(new TrackPackage(
-										"Package number "
-												+ currentPackageNumber
-												+ " lost by " + nextNodeName
-												+ " office",
-										currentPackageNumber, 2));
-								try {
-									// Report a TrackPackage event to Customer
-									// remote event listeners.
-									nodeListener1.report(0, new TrackPackage(
-											"Package number "
-													+ currentPackageNumber
-													+ " lost by "
-													+ nextNodeName + " office",
-											currentPackageNumber, 2));
-								} catch (Exception e4) {
-
-									try {
-										Thread.sleep(45000);
-									} catch (InterruptedException e1) {
-									}
-
-									List<String> listOfOffices1 = registry
-											.list();
-									Iterator<String> iter1 = listOfOffices1
-											.iterator();
-
-									while (iter1.hasNext()) {
-								
-										GPSOfficeRef neighbor1;
-										try {
-											neighbor1 = (GPSOfficeRef) registry
-													.lookup(iter1.next());
-											neighbor1.updateNeighbors();
-										} catch (NotBoundException e1) {
-										}
-									}
-								}
-
-							} catch (RemoteException e1) {
-							}
+	/**
+	 * Schedules a flush for the parcels left in an outbound buffer, unless
+	 * one is pending already.
+	 * 
+	 * @param buffer
+	 *            OutboundBuffer
+	 */
+	private void scheduleRetry(final OutboundBuffer buffer) {
+		if (buffer.scheduleRetry()) {
+			scheduleForward(buffer.neighborName().hashCode(), new Runnable() {
+				public void run() {
+					buffer.retried();
+					flush(buffer);
+				}
+			}, OutboundBuffer.CREDIT_RETRY_MILLIS);
+		}
+	}
+
+	/**
+	 * Sends one batch from an outbound buffer; see flush().
+	 * 
+	 * @param buffer
+	 *            OutboundBuffer
+	 */
+	private void send(OutboundBuffer buffer) {
+		Parcel[] drained = buffer.drain();
+		if (drained.length == 0) {
+			return;
+		}
+		GPSOfficeRef nextNode = buffer.neighbor();
+		Hedge hedge = null;
+		if (HEDGE_MILLIS > 0) {
+			// On the timer thread, as this lane is busy until the call
+			// returns.
+			hedge = new Hedge(buffer, nextNode, drained);
+			threadPool.schedule(hedge, HEDGE_MILLIS, TimeUnit.MILLISECONDS);
+		}
+		long start = System.nanoTime();
+		BatchReceipt receipt = null;
+		try {
+			receipt = nextNode.routeBatch(drained);
+		} catch (RemoteException e) {
+			heartbeats.suspect(buffer.neighborName(), nextNode);
+		}
+		metrics.recordSince(OfficeMetrics.Stage.ROUTE_BATCH, start);
+		if (hedge != null) {
+			hedge.returned(receipt);
+		} else {
+			settle(buffer, nextNode, drained, receipt, null);
+		}
+	}
+
+	/**
+	 * Class Hedge sends the parcels of a batch whose call is slow to the next
+	 * candidate neighbor as well. The hedge fires on the timer thread and
+	 * then fails the parcels over in a forwarding lane. The batch is settled
+	 * once both the call's outcome and what the hedge did with each parcel
+	 * are known; a hedge that starts after the call returned does nothing.
+	 */
+	private class Hedge implements Runnable {
+		private final OutboundBuffer buffer;
+		private final GPSOfficeRef nextNode;
+		private final Parcel[] parcels;
+		private boolean fired;
+		private boolean returned;
+		private BatchReceipt receipt;
+		private boolean[] placed;
+
+		Hedge(OutboundBuffer buffer, GPSOfficeRef nextNode, Parcel[] parcels) {
+			this.buffer = buffer;
+			this.nextNode = nextNode;
+			this.parcels = parcels;
+		}
+
+		public void run() {
+			synchronized (this) {
+				if (returned) {
+					return;
+				}
+				fired = true;
+			}
+			forwarder.execute(parcels[0].packageID, parcels[0].service,
+					new Runnable() {
+						public void run() {
+							hedge();
 						}
+					});
+		}
+
+		private void hedge() {
+			boolean late;
+			synchronized (this) {
+				late = returned;
+			}
+			if (late) {
+				// Too late to help.
+				settle(buffer, nextNode, parcels, receipt, null);
+				return;
+			}
+			boolean[] tried = new boolean[parcels.length];
+			for (int i = 0; i < parcels.length; ++i) {
+				tried[i] = failover(parcels[i], buffer.neighborName());
+				if (tried[i]) {
+					metrics.increment(OfficeMetrics.Counter.HEDGES);
+				}
+			}
+			synchronized (this) {
+				placed = tried;
+				if (!returned) {
+					return;
+				}
+			}
+			settle(buffer, nextNode, parcels, receipt, tried);
+		}
+
+		/**
+		 * Records the outcome of the call, settling the batch unless the
+		 * hedge is still busy with it.
+		 * 
+		 * @param batchReceipt
+		 *            The neighbor's receipt, or null if the call failed
+		 */
+		void returned(BatchReceipt batchReceipt) {
+			boolean[] tried;
+			synchronized (this) {
+				returned = true;
+				receipt = batchReceipt;
+				if (fired && placed == null) {
+					return;
+				}
+				tried = placed;
+			}
+			settle(buffer, nextNode, parcels, batchReceipt, tried);
+		}
+	}
+
+	/**
+	 * Settles a batch once the outcome of the call that sent it is known;
+	 * see flush(). Parcels a hedge sent to another neighbor are left to that
+	 * neighbor; the others are released, failed over, or reported lost
+	 * according to the outcome.
+	 * 
+	 * @param buffer
+	 *            OutboundBuffer
+	 * 
+	 * @param nextNode
+	 *            Remote reference the batch was sent to
+	 * 
+	 * @param drained
+	 *            The batch
+	 * 
+	 * @param receipt
+	 *            The neighbor's receipt, or null if the call failed
+	 * 
+	 * @param placed
+	 *            For each parcel, true if a hedge sent it to another
+	 *            neighbor; null if no hedge did anything
+	 */
+	private void settle(OutboundBuffer buffer, GPSOfficeRef nextNode,
+			Parcel[] drained, BatchReceipt receipt, boolean[] placed) {
+		String neighborName = buffer.neighborName();
+		if (receipt == null) {
+			for (int i = 0; i < drained.length; ++i) {
+				Parcel parcel = drained[i];
+				if (placed != null) {
+					// The hedge found no candidate for it.
+					if (!placed[i]) {
+						release(parcel);
+						packageLost(parcel, officeName);
 					}
-				});
-			} catch (NotBoundException e1) {
+				} else if (failover(parcel, neighborName)) {
+					metrics.increment(OfficeMetrics.Counter.FAILOVERS);
+				} else {
+					release(parcel);
+					packageLost(parcel, officeName);
+				}
+			}
+			return;
+		}
+		Parcel[] batch = drained;
+		if (receipt.accepted < drained.length) {
+			ArrayList<Parcel> refused = new ArrayList<Parcel>();
+			for (int i = receipt.accepted; i < drained.length; ++i) {
+				// Hedged parcels are with the next candidate already.
+				if (placed == null || !placed[i]) {
+					refused.add(drained[i]);
+				}
+			}
+			batch = Arrays.copyOf(drained, receipt.accepted);
+			buffer.refused(divert(refused.toArray(new Parcel[refused.size()]),
+					neighborName), receipt.credits);
+			// A hedge settles outside flush(), which would schedule this.
+			scheduleRetry(buffer);
+		} else {
+			buffer.credited(receipt.credits);
+		}
+		if (batch.length == 0) {
+			return;
+		}
+		metrics.increment(OfficeMetrics.Counter.BATCHES_SENT);
+		metrics.add(OfficeMetrics.Counter.FORWARDED, batch.length);
+		long now = System.nanoTime();
+		for (Parcel parcel : batch) {
+			release(parcel);
+			metrics.record(OfficeMetrics.Stage.HOP, now - parcel.arrivedNanos);
+		}
+		watchCustody(nextNode, neighborName, batch);
+	}
 
+	/**
+	 * Diverts the refused parcels that have waited for the neighbor's credits
+	 * long enough to the next candidate neighbor.
+	 * 
+	 * @param refused
+	 *            Parcels the neighbor refused
+	 * 
+	 * @param neighborName
+	 *            Name of the neighbor
+	 * 
+	 * @return The parcels that are to keep waiting for the neighbor
+	 */
+	private Parcel[] divert(Parcel[] refused, String neighborName) {
+		long now = System.nanoTime();
+		ArrayList<Parcel> waiting = new ArrayList<Parcel>();
+		for (Parcel parcel : refused) {
+			if (parcel.refusedNanos == 0) {
+				parcel.refusedNanos = now;
 			}
+			if (now - parcel.refusedNanos >= TimeUnit.MILLISECONDS
+					.toNanos(CREDIT_HOLD_MILLIS)
+					&& failover(parcel, neighborName)) {
+				metrics.increment(OfficeMetrics.Counter.DIVERTED);
+			} else {
+				waiting.add(parcel);
+			}
+		}
+		return waiting.toArray(new Parcel[waiting.size()]);
+	}
+
+	/**
+	 * Watches parcels that were handed off to a neighbor until the neighbor
+	 * has examined and handed them off in turn. All the parcels in a
+	 * neighbor's custody are polled together, one remote call per poll. If
+	 * the neighbor fails while it holds any of them, those are reported lost
+	 * by that neighbor, either here or when its heartbeats stop, whichever
+	 * comes first.
+	 * 
+	 * @param nextNode
+	 *            GPSOfficeRef
+	 * 
+	 * @param nextNodeName
+	 *            String
+	 * 
+	 * @param batch
+	 *            Parcel[]
+	 */
+	private void watchCustody(GPSOfficeRef nextNode, String nextNodeName,
+			Parcel[] batch) {
+		Custody watched = custodyOf(nextNodeName);
+		OfficeIndex.Entry entry = officeIndex.get(nextNodeName);
+		boolean journaled = entry != null ? entry.journaled : watched
+				.journaled();
+		if (watched.add(batch, nextNode, journaled)) {
+			pollCustody(nextNodeName, watched, INSPECTION_MILLIS);
+		}
+	}
+
+	/**
+	 * Schedules the next poll of a neighbor's custody.
+	 * 
+	 * @param nextNodeName
+	 *            String
+	 * 
+	 * @param watched
+	 *            Custody
+	 * 
+	 * @param delayMillis
+	 *            long
+	 */
+	private void pollCustody(final String nextNodeName, final Custody watched,
+			long delayMillis) {
+		scheduleForward(nextNodeName.hashCode(), new Runnable() {
+			public void run() {
+				long[] packageNums = watched.toPoll();
+				if (packageNums == null) {
+					return;
+				}
+				GPSOfficeRef nextNode = watched.neighbor();
+				long start = System.nanoTime();
+				try {
+					long[] heldNums = nextNode.heldPackages(packageNums);
+					metrics.recordSince(OfficeMetrics.Stage.CUSTODY_POLL, start);
+					if (watched.polled(packageNums, heldNums)) {
+						pollCustody(nextNodeName, watched, CUSTODY_POLL_MILLIS);
+					}
+				} catch (RemoteException e) {
+					metrics.recordSince(OfficeMetrics.Stage.CUSTODY_POLL, start);
+					watched.pollFailed();
+					custodyLost(nextNodeName);
+					heartbeats.suspect(nextNodeName, nextNode);
+				}
+			}
+		}, delayMillis);
+	}
+
+	/**
+	 * Call this method to access the custody of a neighbor, created on first
+	 * use.
+	 * 
+	 * @param name
+	 *            Name of the neighbor
+	 * 
+	 * @return The neighbor's custody
+	 */
+	private Custody custodyOf(String name) {
+		Custody watched = custody.get(name);
+		if (watched == null) {
+			Custody newWatched = new Custody();
+			watched = custody.putIfAbsent(name, newWatched);
+			if (watched == null) {
+				watched = newWatched;
+			}
+		}
+		return watched;
+	}
+
+	/**
+	 * Reports parcels that were in the custody of a failed neighbor as lost
+	 * by it.
+	 * 
+	 * @param name
+	 *            Name of the neighbor
+	 * 
+	 * @param parcels
+	 *            Parcel[]
+	 */
+	private void reportCustodyLost(String name, Parcel[] parcels) {
+		for (Parcel parcel : parcels) {
+			reportEvent(parcel.listener, event(parcel,
+					TrackPackage.Kind.DEPARTED, name));
+			packageLost(parcel, name);
 		}
 	}
 
+	/**
+	 * Runs a task in the forwarding lane of the given package once the given
+	 * delay has passed.
+	 * 
+	 * @param packageNum
+	 *            long
+	 * 
+	 * @param task
+	 *            Runnable
+	 * 
+	 * @param delayMillis
+	 *            long
+	 */
+	private void scheduleForward(long packageNum, Runnable task,
+			long delayMillis) {
+		scheduleForward(packageNum, ServiceClass.STANDARD, task, delayMillis);
+	}
+
+	/**
+	 * Schedules a forwarding task for the given service class; see
+	 * ForwardingEngine for how the classes share a lane.
+	 * 
+	 * @param packageNum
+	 *            long
+	 * 
+	 * @param service
+	 *            ServiceClass
+	 * 
+	 * @param task
+	 *            Runnable
+	 * 
+	 * @param delayMillis
+	 *            long
+	 */
+	private void scheduleForward(final long packageNum,
+			final ServiceClass service, final Runnable task, long delayMillis) {
+		threadPool.schedule(new Runnable() {
+			public void run() {
+				final long fired = System.nanoTime();
+				forwarder.execute(packageNum, service, new Runnable() {
+					public void run() {
+						metrics.recordSince(OfficeMetrics.Stage.FORWARD_QUEUE,
+								fired);
+						task.run();
+					}
+				});
+			}
+		}, delayMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Reports a package as lost by the given office.
+	 * 
+	 * @param parcel
+	 *            Parcel
+	 * 
+	 * @param lostBy
+	 *            Name of the office that lost the package
+	 */
+	private void packageLost(Parcel parcel, String lostBy) {
+		metrics.increment(OfficeMetrics.Counter.LOST);
+		reportEvent(parcel.listener, event(parcel, TrackPackage.Kind.LOST,
+				lostBy));
+	}
+
+	/**
+	 * Creates a TrackPackage event for a parcel.
+	 * 
+	 * @param parcel
+	 *            Parcel
+	 * 
+	 * @param kind
+	 *            TrackPackage.Kind
+	 * 
+	 * @param office
+	 *            Name of the office reporting the event
+	 * 
+	 * @return New event
+	 */
+	private static TrackPackage event(Parcel parcel, TrackPackage.Kind kind,
+			String office) {
+		return new TrackPackage(parcel.packageID, kind, office, parcel.destX,
+				parcel.destY);
+	}
+
+	/**
+	 * Reports a TrackPackage event to the Headquarters remote event listeners
+	 * and to the Customer remote event listener. The event is queued in the
+	 * event dispatcher, so routing never waits for a listener, and a Customer
+	 * that has gone away does not stop the package.
+	 * 
+	 * @param nodeListener
+	 *            RemoteEventListener<TrackPackage>
+	 * 
+	 * @param event
+	 *            TrackPackage
+	 */
+	private void reportEvent(RemoteEventListener<TrackPackage> nodeListener,
+			TrackPackage event) {
+		dispatcher.report(nodeListener, event);
+	}
+
 	/**
 	 * Assigns a tracking number to a new package that arrives at the
-	 * originating node
+	 * originating node. The number is unique across the GPS system; see
+	 * TrackingNumberAllocator for its layout. Just after the node started,
+	 * this method waits until its office ID is settled.
 	 * 
 	 * @return Package number to track the package
 	 * 
+	 * @exception RemoteException
+	 *                Thrown if a remote error occurred, or no office ID is
+	 *                free
 	 */
 	public long assignPackageNumber() throws RemoteException {
-		long packageNumber = System.currentTimeMillis();
+		awaitOfficeId();
+		long packageNumber = trackingNumbers.next();
 		return packageNumber;
 	}
 
 	/**
-	 * This methods initiates the routing of package towards its destination
+	 * This methods initiates the routing of package towards its destination.
+	 * The package is accepted for examination and this method returns without
+	 * waiting for it.
 	 * 
 	 * @param packNumber
 	 *            long
@@ -517,58 +1950,121 @@ public class GPSOffice implements GPSOfficeRef {
 	public void sendPackage(long packNumber, double x, double y,
 			RemoteEventListener<TrackPackage> nodeListener)
 			throws RemoteException {
+		sendPackage(packNumber, x, y, ServiceClass.STANDARD, nodeListener);
+	}
 
-		final long getPackNum = packNumber;
-		try {
-
-			this.route(getPackNum, x, y, nodeListener);
-		} catch (Exception e) {
-			// Report a TrackPackage to Headquarters remote event listeners.
-			eventGenerator.reportEvent(new TrackPackage("Package number "
-					+ packNumber + " departed from " + this.getOfficeName()
-					+ " office", packNumber, 1));
-			// Report a TrackPackage event to Customer remote event listeners.
-			nodeListener.report(0, new TrackPackage("Package number "
-					+ packNumber + " departed from " + this.getOfficeName()
-					+ " office", packNumber, 1));
-
-			try {
-				Thread.sleep(100);
-			} catch (InterruptedException e2) {
-			}
-
-			// Report a TrackPackage to any remote event listeners.
-			eventGenerator.reportEvent(new TrackPackage("Package number "
-					+ packNumber + " lost by " + this.getOfficeName()
-					+ " office", packNumber, 2));
-			try {
-				// Report a TrackPackage event to Customer remote event
-				// listeners.
-				nodeListener.report(0, new TrackPackage("Package number "
-						+ packNumber + " lost by " + this.getOfficeName()
-						+ " office", packNumber, 2));
-			} catch (Exception e3) {
-				try {
-					Thread.sleep(45000);
-				} catch (InterruptedException e1) {
-				}
-
-				List<String> listOfOffices1 = registry.list();
-				Iterator<String> iter1 = listOfOffices1.iterator();
+	/**
+	 * Initiates the routing of a package of the given service class; see
+	 * sendPackage(long, double, double, RemoteEventListener).
+	 * 
+	 * @param packNumber
+	 *            long
+	 * 
+	 * @param x
+	 *            double
+	 * 
+	 * @param y
+	 *            double
+	 * 
+	 * @param service
+	 *            ServiceClass
+	 * 
+	 * @param nodeListener
+	 *            RemoteEventListener<TrackPackage>
+	 * 
+	 * @exception RemoteException
+	 *                Thrown if a remote error occurred
+	 */
+	public void sendPackage(long packNumber, double x, double y,
+			ServiceClass service,
+			RemoteEventListener<TrackPackage> nodeListener)
+			throws RemoteException {
+		Parcel parcel = originate(new Parcel(packNumber, x, y, nodeListener,
+				service));
+		journal(parcel);
+		examining.incrementAndGet();
+		accept(parcel);
+	}
 
-				while (iter1.hasNext()) {
-			
-					GPSOfficeRef neighbor1;
-					try {
-						neighbor1 = (GPSOfficeRef) registry
-								.lookup(iter1.next());
-						neighbor1.updateNeighbors();
-					} catch (NotBoundException e1) {
-					}
-				}
-			}
+	/**
+	 * This method assigns tracking numbers to a batch of packages and
+	 * initiates the routing of each of them towards its destination, all in
+	 * one call. The packages are accepted for examination and this method
+	 * returns without waiting for them. Just after the node started, it waits
+	 * until the node's office ID is settled.
+	 * 
+	 * @param x
+	 *            X-coordinates of the destinations
+	 * 
+	 * @param y
+	 *            Y-coordinates of the destinations
+	 * 
+	 * @param nodeListener
+	 *            RemoteEventListener<TrackPackage>
+	 * 
+	 * @return Tracking numbers of the packages, in the order of the
+	 *         destinations
+	 * 
+	 * @exception IllegalArgumentException
+	 *                (unchecked exception) Thrown if the coordinate arrays
+	 *                differ in length
+	 * 
+	 * @exception RemoteException
+	 *                Thrown if a remote error occurred
+	 */
+	public long[] sendPackages(double[] x, double[] y,
+			RemoteEventListener<TrackPackage> nodeListener)
+			throws RemoteException {
+		return sendPackages(x, y, ServiceClass.STANDARD, nodeListener);
+	}
 
+	/**
+	 * Sends a batch of packages of the given service class; see
+	 * sendPackages(double[], double[], RemoteEventListener).
+	 * 
+	 * @param x
+	 *            X-coordinates of the destinations
+	 * 
+	 * @param y
+	 *            Y-coordinates of the destinations
+	 * 
+	 * @param service
+	 *            ServiceClass
+	 * 
+	 * @param nodeListener
+	 *            RemoteEventListener<TrackPackage>
+	 * 
+	 * @return Tracking numbers of the packages, in the order of the
+	 *         destinations
+	 * 
+	 * @exception IllegalArgumentException
+	 *                (unchecked exception) Thrown if the coordinate arrays
+	 *                differ in length
+	 * 
+	 * @exception RemoteException
+	 *                Thrown if a remote error occurred
+	 */
+	public long[] sendPackages(double[] x, double[] y, ServiceClass service,
+			RemoteEventListener<TrackPackage> nodeListener)
+			throws RemoteException {
+		if (x.length != y.length) {
+			throw new IllegalArgumentException("sendPackages(): "
+					+ x.length + " X-coordinates but " + y.length
+					+ " Y-coordinates");
+		}
+		awaitOfficeId();
+		long[] packageNumbers = trackingNumbers.allocate(x.length);
+		Parcel[] parcels = new Parcel[x.length];
+		for (int i = 0; i < x.length; ++i) {
+			parcels[i] = originate(new Parcel(packageNumbers[i], x[i], y[i],
+					nodeListener, service));
 		}
+		journal(parcels);
+		examining.addAndGet(parcels.length);
+		for (Parcel parcel : parcels) {
+			accept(parcel);
+		}
+		return packageNumbers;
 	}
 
 	/**
@@ -584,6 +2080,70 @@ public class GPSOffice implements GPSOfficeRef {
 		return eventGenerator.addListener(listener);
 	}
 
+	/**
+	 * Call this method to access the counters, queue depths and latency
+	 * histograms of this node
+	 * 
+	 * @return Snapshot of the node's metrics
+	 * 
+	 * @exception RemoteException
+	 *                Thrown if a remote error occurred
+	 */
+	public OfficeStats getStats() throws RemoteException {
+		int outbound = 0;
+		for (OutboundBuffer buffer : outboundBuffers.values()) {
+			outbound += buffer.size();
+		}
+		LinkedHashMap<String, Long> gauges = new LinkedHashMap<String, Long>();
+		gauges.put("HELD_PACKAGES", (long) holding.size());
+		gauges.put("OUTBOUND_PARCELS", (long) outbound);
+		gauges.put("FORWARD_QUEUED", (long) forwarder.queued());
+		gauges.put("EVENTS_QUEUED", (long) dispatcher.queued());
+		gauges.put("NEIGHBORS", (long) neighborsTable.size());
+		gauges.put("KNOWN_OFFICES", (long) officeIndex.size());
+		gauges.put("CREDITS", (long) credits());
+		return metrics.snapshot(officeName, gauges);
+	}
+
+	/**
+	 * Call this method to check that this node is alive
+	 * 
+	 * @return Time this node started, in milliseconds since the Unix epoch
+	 * 
+	 * @exception RemoteException
+	 *                Thrown if a remote error occurred
+	 */
+	public long heartbeat() throws RemoteException {
+		return epoch;
+	}
+
+	/**
+	 * Schedules the periodic dump of this node's stats, if a stats directory
+	 * is configured. A failed write is skipped; a GPSOffice never prints.
+	 */
+	private void scheduleStatsDump() {
+		String dir = System.getProperty("gps.statsDir");
+		if (dir == null) {
+			return;
+		}
+		final File file = new File(dir, officeName + ".stats");
+		long interval = Math.max(1,
+				Long.getLong("gps.statsIntervalMillis", 10000));
+		threadPool.scheduleAtFixedRate(new Runnable() {
+			public void run() {
+				try {
+					FileWriter out = new FileWriter(file, true);
+					try {
+						out.write(getStats().toString());
+					} finally {
+						out.close();
+					}
+				} catch (IOException e) {
+				}
+			}
+		}, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
 	/**
 	 * Parse an integer command line argument.
 	 * 
@@ -43,6 +43,17 @@ public interface GPSOfficeRef extends Remote {
 	 */
 	public String getOfficeName() throws RemoteException;
 
+	/**
+	 * Call this method to access the name, coordinates and epoch of a
+	 * GPSOffice object in a single remote call
+	 * 
+	 * @return Descriptor of the GPSOffice node
+	 * 
+	 * @exception RemoteException
+	 *                Thrown if a remote error occurred
+	 */
+	public OfficeDescriptor getDescriptor() throws RemoteException;
+
 	/**
 	 * Call this method to calculate Euclidean distance between the object that
 	 * invokes this method and the argument passed in the method
@@ -88,6 +99,64 @@ public interface GPSOfficeRef extends Remote {
 			RemoteEventListener<TrackPackage> nodeListener)
 			throws RemoteException;
 
+	/**
+	 * Routes a package of the given service class to the next nearest
+	 * neighbor node; route(n, x, y, nodeListener) routes a standard package.
+	 * 
+	 * @param n
+	 *            long
+	 * 
+	 * @param x
+	 *            double
+	 * 
+	 * @param y
+	 *            double
+	 * 
+	 * @param service
+	 *            ServiceClass
+	 * 
+	 * @param nodeListener
+	 *            RemoteEventListener<TrackPackage>
+	 * 
+	 * @exception RemoteException
+	 *                Thrown if a remote error occurred
+	 */
+	public void route(long n, double x, double y, ServiceClass service,
+			RemoteEventListener<TrackPackage> nodeListener)
+			throws RemoteException;
+
+	/**
+	 * This method is called by a neighboring GPSOffice node to hand over
+	 * several packages in one call. The node takes as many of them as its
+	 * admission budget allows, from the start of the batch; the rest stay
+	 * with the caller.
+	 * 
+	 * @param parcels
+	 *            Parcel[]
+	 * 
+	 * @return How many parcels were taken, and how many more the node is
+	 *         ready to take
+	 * 
+	 * @exception RemoteException
+	 *                Thrown if a remote error occurred
+	 */
+	public BatchReceipt routeBatch(Parcel[] parcels) throws RemoteException;
+
+	/**
+	 * Call this method to find out which of the given packages are still held
+	 * by this node, that is, are being examined or have not yet been handed
+	 * off
+	 * 
+	 * @param n
+	 *            long[]
+	 * 
+	 * @return The package numbers that are still held by this node
+	 * 
+	 * @exception RemoteException
+	 *                Thrown if a remote error occurred
+	 */
+	public long[] heldPackages(long[] n) throws RemoteException;
+
 	/**
 	 * This method is called by a GPSOffice node to calculate the distance
 	 * between itself and the destination
@@ -128,6 +197,82 @@ public interface GPSOfficeRef extends Remote {
 			RemoteEventListener<TrackPackage> nodeListener)
 			throws RemoteException;
 
+	/**
+	 * Initiates the routing of a package of the given service class;
+	 * sendPackage(n, x, y, nodeListener) sends a standard package.
+	 * 
+	 * @param n
+	 *            long
+	 * 
+	 * @param x
+	 *            double
+	 * 
+	 * @param y
+	 *            double
+	 * 
+	 * @param service
+	 *            ServiceClass
+	 * 
+	 * @param nodeListener
+	 *            RemoteEventListener<TrackPackage>
+	 * 
+	 * @exception RemoteException
+	 *                Thrown if a remote error occurred
+	 */
+	public void sendPackage(long n, double x, double y, ServiceClass service,
+			RemoteEventListener<TrackPackage> nodeListener)
+			throws RemoteException;
+
+	/**
+	 * This method assigns tracking numbers to a batch of packages and
+	 * initiates the routing of each of them towards its destination, all in
+	 * one call
+	 * 
+	 * @param x
+	 *            X-coordinates of the destinations
+	 * 
+	 * @param y
+	 *            Y-coordinates of the destinations
+	 * 
+	 * @param nodeListener
+	 *            RemoteEventListener<TrackPackage>
+	 * 
+	 * @return Tracking numbers of the packages, in the order of the
+	 *         destinations
+	 * 
+	 * @exception RemoteException
+	 *                Thrown if a remote error occurred
+	 */
+	public long[] sendPackages(double[] x, double[] y,
+			RemoteEventListener<TrackPackage> nodeListener)
+			throws RemoteException;
+
+	/**
+	 * Sends a batch of packages of the given service class, all in one call;
+	 * sendPackages(x, y, nodeListener) sends standard packages.
+	 * 
+	 * @param x
+	 *            X-coordinates of the destinations
+	 * 
+	 * @param y
+	 *            Y-coordinates of the destinations
+	 * 
+	 * @param service
+	 *            ServiceClass
+	 * 
+	 * @param nodeListener
+	 *            RemoteEventListener<TrackPackage>
+	 * 
+	 * @return Tracking numbers of the packages, in the order of the
+	 *         destinations
+	 * 
+	 * @exception RemoteException
+	 *                Thrown if a remote error occurred
+	 */
+	public long[] sendPackages(double[] x, double[] y, ServiceClass service,
+			RemoteEventListener<TrackPackage> nodeListener)
+			throws RemoteException;
+
 	/**
 	 * Add the given remote event listener to this node. Whenever a package
 	 * arrives or departs from this node, this node will report a TrackPackage
@@ -149,4 +294,26 @@ public interface GPSOfficeRef extends Remote {
 
 	public long assignPackageNumber() throws RemoteException;
 
+	/**
+	 * Call this method to access the counters, queue depths and latency
+	 * histograms of the node
+	 * 
+	 * @return Snapshot of the node's metrics
+	 * 
+	 * @exception RemoteException
+	 *                Thrown if a remote error occurred
+	 */
+	public OfficeStats getStats() throws RemoteException;
+
+	/**
+	 * Call this method to check that this node is alive. Neighbors call it
+	 * periodically to detect failure.
+	 * 
+	 * @return Time this node started, in milliseconds since the Unix epoch
+	 * 
+	 * @exception RemoteException
+	 *                Thrown if a remote error occurred
+	 */
+	public long heartbeat() throws RemoteException;
+
 }
@@ -5,8 +5,13 @@ import edu.rit.ds.registry.NotBoundException;
 import edu.rit.ds.registry.RegistryEvent;
 import edu.rit.ds.registry.RegistryEventFilter;
 import edu.rit.ds.registry.RegistryEventListener;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
+import java.util.HashMap;
 
 /**
  * @author Ganesh Chandrasekaran
@@ -23,6 +28,17 @@ import java.rmi.server.UnicastRemoteObject;
  * Usage: java Headquarters <I>host</I> <I>port</I>" <BR>
  * <I>host</I> = Registry Server's host <BR>
  * <I>port</I> = Registry Server's port <BR>
+ * <P>
+ * Headquarters keeps the last known state of every package in a
+ * {@linkplain PackageStore}, available through {@linkplain #packages()}. If
+ * the system property <TT>gps.hqConsole</TT> is true, an operator can query it
+ * on standard input with <TT>where</TT> <I>id</I>, <TT>at</TT>
+ * <I>office</I>, <TT>count</TT> <I>kind</I> or <TT>size</TT>.
+ * <P>
+ * If the system property <TT>gps.hqJournal</TT> names a directory, every
+ * event received is also appended to an {@linkplain EventJournal} there,
+ * which is replayed into the package state when Headquarters starts. The
+ * journal keeps every segment, so it grows with the events received.
  */
 public class Headquarters implements Serializable {
 
@@ -30,6 +46,9 @@ public class Headquarters implements Serializable {
 	private static RegistryEventListener registryListener;
 	private static RegistryEventFilter registryFilter;
 	private static RemoteEventListener<TrackPackage> nodeListener;
+	private static HashMap<String, OfficeDescriptor> offices = new HashMap<String, OfficeDescriptor>();
+	private static final PackageStore store = new PackageStore();
+	private static EventJournal journal;
 
 	/**
 	 * Headquarters main program.
@@ -41,6 +60,20 @@ public class Headquarters implements Serializable {
 		String host = args[0];
 		int port = parseInt(args[1], "port");
 
+		// Rebuild the package state from the journal.
+		String journalDir = System.getProperty("gps.hqJournal");
+		if (journalDir != null && journalDir.length() > 0) {
+			journal = new EventJournal(new File(journalDir));
+			journal.replay(new EventJournal.Visitor() {
+				public void apply(long packageID, TrackPackage.Kind kind,
+						String office, double destX, double destY,
+						long timestamp) {
+					store.apply(packageID, kind, office, destX, destY,
+							timestamp);
+				}
+			});
+		}
+
 		// Get a proxy for the Registry Server.
 		registry = new RegistryProxy(host, port);
 
@@ -59,7 +92,17 @@ public class Headquarters implements Serializable {
 		nodeListener = new RemoteEventListener<TrackPackage>() {
 			public void report(long seqnum, TrackPackage event) {
 
-				System.out.println(event.message);
+				for (TrackPackage e : event.events()) {
+					store.apply(e);
+					journal(e);
+					System.out.println(e.message());
+				}
+				if (journal != null) {
+					try {
+						journal.sync();
+					} catch (IOException exc) {
+					}
+				}
 
 			}
 		};
@@ -76,10 +119,79 @@ public class Headquarters implements Serializable {
 			listenToGPSOffice(objectName);
 		}
 
+		if (Boolean.getBoolean("gps.hqConsole")) {
+			Thread console = new Thread(new Runnable() {
+				public void run() {
+					console();
+				}
+			}, "hq-console");
+			console.setDaemon(true);
+			console.start();
+		}
+	}
+
+	/**
+	 * Append an event to the journal, if there is one. Journal failures do not
+	 * stop event tracking.
+	 *
+	 * @param event
+	 *            TrackPackage
+	 */
+	private static void journal(TrackPackage event) {
+		if (journal != null) {
+			try {
+				journal.append(event);
+			} catch (IOException exc) {
+			}
+		}
 	}
 
 	/**
-	 * Tell the given GPSOffice object to notify us of the status.
+	 * Call this method to query the packages Headquarters has heard of
+	 *
+	 * @return Live package state
+	 */
+	public static PackageQuery packages() {
+		return store;
+	}
+
+	/**
+	 * Answer operator queries read from standard input until it is closed.
+	 */
+	private static void console() {
+		BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				String[] words = line.trim().split("\\s+");
+				try {
+					if (words[0].equals("where") && words.length == 2) {
+						PackageQuery.Status status = store.locate(Long
+								.parseLong(words[1]));
+						System.out.println(status == null ? "Package number "
+								+ words[1] + " unknown" : status);
+					} else if (words[0].equals("at") && words.length == 2) {
+						System.out.println(store.countAt(words[1])
+								+ " packages at " + words[1] + " office");
+					} else if (words[0].equals("count") && words.length == 2) {
+						TrackPackage.Kind kind = TrackPackage.Kind
+								.valueOf(words[1].toUpperCase());
+						System.out.println(store.count(kind) + " packages "
+								+ kind.toString().toLowerCase());
+					} else if (words[0].equals("size")) {
+						System.out.println(store.size() + " packages");
+					}
+				} catch (IllegalArgumentException exc) {
+				}
+			}
+		} catch (IOException exc) {
+		}
+	}
+
+	/**
+	 * Tell the given GPSOffice object to notify us of the status. The office
+	 * descriptor is fetched first so an office that is already being listened
+	 * to is not registered twice.
 	 * 
 	 * @param objectName
 	 *            Node object's name.
@@ -87,10 +199,15 @@ public class Headquarters implements Serializable {
 	 * @exception RemoteException
 	 *                Thrown if a remote error occurred.
 	 */
-	private static void listenToGPSOffice(String objectName) {
+	private static synchronized void listenToGPSOffice(String objectName) {
 		try {
 			GPSOfficeRef node = (GPSOfficeRef) registry.lookup(objectName);
+			OfficeDescriptor descriptor = node.getDescriptor();
+			if (descriptor.equals(offices.get(objectName))) {
+				return;
+			}
 			node.addListener(nodeListener);
+			offices.put(objectName, descriptor);
 		} catch (NotBoundException exc) {
 		} catch (RemoteException exc) {
 		}
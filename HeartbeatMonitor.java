@@ -0,0 +1,271 @@
+import java.rmi.RemoteException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Ganesh Chandrasekaran
+ * @version 10-17-2026
+ */
+
+/**
+ * Class HeartbeatMonitor detects the failure of the neighbors of a GPSOffice
+ * node. Every <TT>gps.heartbeatMillis</TT> milliseconds (default 200) it calls
+ * heartbeat() on each watched office, with at most one call in flight per
+ * office; an office that has not answered for
+ * <TT>gps.heartbeatTimeoutMillis</TT> milliseconds (default 800) is declared
+ * failed. A timeout alone may only mean the office is slow, so an office is
+ * declared unreachable as well only once a heartbeat call to it fails
+ * outright. A failed office stays on probation and is still probed, so that
+ * an office that was only slow is reported recovered once it answers again;
+ * forget() ends the probation when the office is known to be gone.
+ */
+public class HeartbeatMonitor {
+
+	/**
+	 * Interface Listener is told when a watched office fails or recovers. The
+	 * calls are made from the monitor's own threads.
+	 */
+	public static interface Listener {
+		/**
+		 * Reports that an office has stopped answering heartbeats. The
+		 * office may only be slow.
+		 *
+		 * @param name
+		 *            Name of the office
+		 */
+		public void failed(String name);
+
+		/**
+		 * Reports that a heartbeat call to an office failed, so the office
+		 * is gone rather than slow. An office that is unreachable has been
+		 * reported failed first.
+		 *
+		 * @param name
+		 *            Name of the office
+		 */
+		public void unreachable(String name);
+
+		/**
+		 * Reports that a failed office has answered a heartbeat again.
+		 *
+		 * @param name
+		 *            Name of the office
+		 */
+		public void recovered(String name);
+	}
+
+	/**
+	 * Class Watch is the heartbeat state of one office.
+	 */
+	private static class Watch {
+		final GPSOfficeRef office;
+		long lastSeen;
+		boolean inFlight;
+		boolean failed;
+		boolean unreachable;
+
+		Watch(GPSOfficeRef office, long now) {
+			this.office = office;
+			this.lastSeen = now;
+		}
+	}
+
+	private final Listener listener;
+	private final OfficeMetrics metrics;
+	private final long timeoutNanos;
+	private final HashMap<String, Watch> watches = new HashMap<String, Watch>();
+	private final ScheduledExecutorService timer;
+	private final ExecutorService pingPool;
+
+	/**
+	 * Create a new heartbeat monitor configured from the system properties.
+	 * The monitor starts right away, watching nothing.
+	 *
+	 * @param listener
+	 *            Listener to tell about failures and recoveries
+	 * @param metrics
+	 *            Metrics of the node
+	 *
+	 * @exception IllegalArgumentException
+	 *                (unchecked exception) Thrown if the interval or timeout
+	 *                is not positive
+	 */
+	public HeartbeatMonitor(Listener listener, OfficeMetrics metrics) {
+		long interval = Long.getLong("gps.heartbeatMillis", 200);
+		long timeout = Long.getLong("gps.heartbeatTimeoutMillis", 800);
+		if (interval <= 0 || timeout <= 0) {
+			throw new IllegalArgumentException("HeartbeatMonitor(): interval = "
+					+ interval + ", timeout = " + timeout + " illegal");
+		}
+		this.listener = listener;
+		this.metrics = metrics;
+		this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+		ThreadFactory daemons = new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "heartbeat");
+				t.setDaemon(true);
+				return t;
+			}
+		};
+		this.timer = Executors.newSingleThreadScheduledExecutor(daemons);
+		this.pingPool = Executors.newCachedThreadPool(daemons);
+		timer.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				tick();
+			}
+		}, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Replaces the set of watched offices. Offices on probation stay watched
+	 * until they recover or are forgotten.
+	 *
+	 * @param offices
+	 *            Remote references of the offices to watch, by name
+	 */
+	public synchronized void watch(Map<String, GPSOfficeRef> offices) {
+		long now = System.nanoTime();
+		Iterator<Map.Entry<String, Watch>> iter = watches.entrySet()
+				.iterator();
+		while (iter.hasNext()) {
+			Map.Entry<String, Watch> e = iter.next();
+			if (!e.getValue().failed && !offices.containsKey(e.getKey())) {
+				iter.remove();
+			}
+		}
+		for (Map.Entry<String, GPSOfficeRef> e : offices.entrySet()) {
+			if (!watches.containsKey(e.getKey())) {
+				watches.put(e.getKey(), new Watch(e.getValue(), now));
+			}
+		}
+	}
+
+	/**
+	 * Declares an office failed without waiting for the timeout, for instance
+	 * after a remote call to it failed. An office that was not watched is put
+	 * on probation. The office is declared unreachable only if its next
+	 * heartbeat call fails too.
+	 *
+	 * @param name
+	 *            Name of the office
+	 * @param office
+	 *            Remote reference of the office
+	 */
+	public void suspect(String name, GPSOfficeRef office) {
+		synchronized (this) {
+			Watch w = watches.get(name);
+			if (w == null) {
+				w = new Watch(office, System.nanoTime());
+				watches.put(name, w);
+			} else if (w.failed) {
+				return;
+			}
+			w.failed = true;
+		}
+		metrics.increment(OfficeMetrics.Counter.NEIGHBOR_FAILURES);
+		listener.failed(name);
+	}
+
+	/**
+	 * Stops watching an office.
+	 *
+	 * @param name
+	 *            Name of the office
+	 */
+	public synchronized void forget(String name) {
+		watches.remove(name);
+	}
+
+	/**
+	 * Stops the monitor.
+	 */
+	public void shutdown() {
+		timer.shutdownNow();
+		pingPool.shutdownNow();
+	}
+
+	/**
+	 * Sends the due heartbeats and declares failed the offices whose last
+	 * answer is older than the timeout.
+	 */
+	private void tick() {
+		long now = System.nanoTime();
+		HashMap<String, Watch> due = new HashMap<String, Watch>();
+		HashMap<String, Watch> expired = new HashMap<String, Watch>();
+		synchronized (this) {
+			for (Map.Entry<String, Watch> e : watches.entrySet()) {
+				Watch w = e.getValue();
+				if (!w.failed && now - w.lastSeen > timeoutNanos) {
+					w.failed = true;
+					expired.put(e.getKey(), w);
+				}
+				if (!w.inFlight) {
+					w.inFlight = true;
+					due.put(e.getKey(), w);
+				}
+			}
+		}
+		for (String name : expired.keySet()) {
+			metrics.increment(OfficeMetrics.Counter.NEIGHBOR_FAILURES);
+			listener.failed(name);
+		}
+		for (Map.Entry<String, Watch> e : due.entrySet()) {
+			ping(e.getKey(), e.getValue());
+		}
+	}
+
+	private void ping(final String name, final Watch w) {
+		pingPool.execute(new Runnable() {
+			public void run() {
+				long start = System.nanoTime();
+				boolean answered;
+				try {
+					w.office.heartbeat();
+					answered = true;
+				} catch (RemoteException exc) {
+					answered = false;
+				}
+				metrics.recordSince(OfficeMetrics.Stage.HEARTBEAT, start);
+				boolean recovered = false;
+				boolean failed = false;
+				boolean unreachable = false;
+				synchronized (HeartbeatMonitor.this) {
+					w.inFlight = false;
+					if (watches.get(name) != w) {
+						return;
+					}
+					if (answered) {
+						w.lastSeen = System.nanoTime();
+						if (w.failed) {
+							// Off probation; the listener decides whether
+							// to watch it again.
+							watches.remove(name);
+							recovered = true;
+						}
+					} else if (!w.unreachable) {
+						failed = !w.failed;
+						w.failed = true;
+						w.unreachable = true;
+						unreachable = true;
+					}
+				}
+				if (failed) {
+					metrics.increment(OfficeMetrics.Counter.NEIGHBOR_FAILURES);
+					listener.failed(name);
+				}
+				if (unreachable) {
+					listener.unreachable(name);
+				}
+				if (recovered) {
+					listener.recovered(name);
+				}
+			}
+		});
+	}
+}
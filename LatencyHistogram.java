@@ -0,0 +1,180 @@
+import java.io.Serializable;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author Ganesh Chandrasekaran
+ * @version 10-17-2026
+ */
+
+/**
+ * Class LatencyHistogram records durations in nanoseconds into log-linear
+ * buckets, in the manner of an HDR histogram: every power of two is split
+ * into 32 equal buckets, so any recorded value is known to within about 3%.
+ * Values from 0 up to about 4.9 hours are kept; longer ones fall into the top
+ * bucket.
+ * <P>
+ * Recording is lock-free and allocates nothing, so any number of threads may
+ * record at once.
+ */
+public class LatencyHistogram {
+	private static final int SUB_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	private static final int MAX_EXPONENT = 43;
+	private static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2)
+			* SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records one duration.
+	 *
+	 * @param nanos
+	 *            Duration in nanoseconds; negative durations count as 0
+	 */
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		counts.incrementAndGet(bucketOf(nanos));
+		sum.add(nanos);
+		long m;
+		while (nanos > (m = max.get()) && !max.compareAndSet(m, nanos))
+			;
+	}
+
+	/**
+	 * Records the time elapsed since the given start.
+	 *
+	 * @param startNanos
+	 *            Start time from System.nanoTime()
+	 */
+	public void recordSince(long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * Call this method to take a copy of the histogram. Values recorded while
+	 * the copy is taken may or may not be in it.
+	 *
+	 * @return Snapshot of the histogram
+	 */
+	public Snapshot snapshot() {
+		long[] copy = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; ++i) {
+			copy[i] = counts.get(i);
+		}
+		return new Snapshot(copy, sum.sum(), max.get());
+	}
+
+	private static int bucketOf(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = Math.min(MAX_EXPONENT,
+				63 - Long.numberOfLeadingZeros(value));
+		if (exponent == MAX_EXPONENT && value >>> MAX_EXPONENT > 1) {
+			return BUCKETS - 1;
+		}
+		return (exponent - SUB_BITS + 1) * SUB_BUCKETS
+				+ (int) ((value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1));
+	}
+
+	private static long lowestOf(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+		long sub = bucket % SUB_BUCKETS;
+		return (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+	}
+
+	/**
+	 * Class Snapshot is an immutable copy of a latency histogram that can be
+	 * sent to another process.
+	 */
+	public static class Snapshot implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private final long[] counts;
+		private final long count;
+		private final long sum;
+		private final long max;
+
+		Snapshot(long[] counts, long sum, long max) {
+			this.counts = counts;
+			long n = 0;
+			for (long c : counts) {
+				n += c;
+			}
+			this.count = n;
+			this.sum = sum;
+			this.max = max;
+		}
+
+		/**
+		 * Call this method to access the number of recorded durations
+		 *
+		 * @return Number of durations
+		 */
+		public long count() {
+			return count;
+		}
+
+		/**
+		 * Call this method to access the mean duration
+		 *
+		 * @return Mean in nanoseconds, or 0 if nothing was recorded
+		 */
+		public double mean() {
+			return count == 0 ? 0 : (double) sum / count;
+		}
+
+		/**
+		 * Call this method to access the longest duration
+		 *
+		 * @return Maximum in nanoseconds
+		 */
+		public long max() {
+			return max;
+		}
+
+		/**
+		 * Call this method to estimate a percentile of the durations
+		 *
+		 * @param p
+		 *            Percentile between 0 and 100
+		 *
+		 * @return Middle of the bucket holding the percentile, in
+		 *         nanoseconds, never more than the maximum
+		 */
+		public long percentile(double p) {
+			if (count == 0) {
+				return 0;
+			}
+			long rank = Math.max(1, (long) Math.ceil(p / 100 * count));
+			long seen = 0;
+			for (int i = 0; i < counts.length; ++i) {
+				seen += counts[i];
+				if (seen >= rank) {
+					long low = lowestOf(i);
+					long high = i + 1 < counts.length ? lowestOf(i + 1) : low;
+					return Math.min(max, (low + high) / 2);
+				}
+			}
+			return max;
+		}
+
+		public String toString() {
+			return String.format(Locale.ROOT,
+					"n=%d mean=%.3f p50=%.3f p90=%.3f p99=%.3f p99.9=%.3f max=%.3f ms",
+					count, mean() / 1e6, percentile(50) / 1e6,
+					percentile(90) / 1e6, percentile(99) / 1e6,
+					percentile(99.9) / 1e6, max / 1e6);
+		}
+	}
+}
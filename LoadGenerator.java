@@ -0,0 +1,507 @@
+import edu.rit.ds.RemoteEventListener;
+import edu.rit.ds.registry.RegistryProxy;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Ganesh Chandrasekaran
+ * @version 10-17-2026
+ */
+
+/**
+ * Class LoadGenerator measures the GPSOffice system under load on one host. It
+ * starts a Registry Server and <I>offices</I> GPSOffice nodes, each in its own
+ * JVM, at random locations, then sends <I>packages</I> packages to random
+ * destinations from random offices, keeping at most <I>concurrency</I>
+ * packages in flight. Each package's delivery latency and hop count are
+ * recorded from its tracking events, and a one-line summary is written as
+ * JSON or CSV so runs can be compared.
+ * <P>
+ * Usage: java LoadGenerator <I>offices</I> <I>packages</I>
+ * <I>concurrency</I> [<I>report</I>] <BR>
+ * <I>offices</I> = number of GPSOffice nodes to start <BR>
+ * <I>packages</I> = number of packages to send <BR>
+ * <I>concurrency</I> = maximum number of packages in flight <BR>
+ * <I>report</I> = report file (default: standard output); a name ending in
+ * <TT>.csv</TT> selects CSV
+ * <P>
+ * The run is configured by system properties: <BR>
+ * <TT>gps.loadPort</TT> = Registry Server's port (default 37111) <BR>
+ * <TT>gps.loadSeed</TT> = random seed for locations and destinations (default
+ * 1) <BR>
+ * <TT>gps.loadArea</TT> = side of the square the offices and destinations lie
+ * in (default 100) <BR>
+ * <TT>gps.loadTimeoutSeconds</TT> = time to wait for the packages (default
+ * 600) <BR>
+ * <TT>gps.loadFormat</TT> = <TT>json</TT> or <TT>csv</TT>, overriding the
+ * report name <BR>
+ * Every other <TT>gps.</TT> property, such as <TT>gps.inspectionMillis</TT>,
+ * is passed on to the GPSOffice JVMs and recorded in the report. The child
+ * JVMs' output goes to log files in a temporary directory.
+ */
+public class LoadGenerator {
+	private static final byte PENDING = 0;
+	private static final byte DELIVERED = 1;
+	private static final byte LOST = 2;
+	private static final byte FAILED = 3;
+
+	private final int packages;
+	private final long[] submitted;
+	private final long[] completed;
+	private final int[] hops;
+	private final byte[] outcome;
+	private final LongIntHashMap index = new LongIntHashMap(-1);
+	private final Semaphore window;
+	private int done;
+
+	/**
+	 * Create a new load generator for the given number of packages.
+	 *
+	 * @param packages
+	 *            int
+	 * @param concurrency
+	 *            int
+	 */
+	public LoadGenerator(int packages, int concurrency) {
+		this.packages = packages;
+		this.submitted = new long[packages];
+		this.completed = new long[packages];
+		this.hops = new int[packages];
+		this.outcome = new byte[packages];
+		this.window = new Semaphore(concurrency);
+	}
+
+	/**
+	 * LoadGenerator main program.
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 3 || args.length > 4)
+			usage();
+		int offices = parseInt(args[0], "offices");
+		int packages = parseInt(args[1], "packages");
+		int concurrency = parseInt(args[2], "concurrency");
+		String report = args.length == 4 ? args[3] : null;
+		int port = Integer.getInteger("gps.loadPort", 37111);
+		long seed = Long.getLong("gps.loadSeed", 1);
+		double area = Double.parseDouble(System.getProperty("gps.loadArea",
+				"100"));
+		long timeout = Long.getLong("gps.loadTimeoutSeconds", 600);
+		String format = System.getProperty("gps.loadFormat",
+				report != null && report.endsWith(".csv") ? "csv" : "json");
+
+		final List<Process> children = new ArrayList<Process>();
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			public void run() {
+				stop(children);
+			}
+		}));
+		try {
+			Random random = new Random(seed);
+			File logs = File.createTempFile("gps-load", "");
+			logs.delete();
+			logs.mkdirs();
+			System.err.println("LoadGenerator: logs in " + logs);
+
+			children.add(launch(logs, "registry",
+					"edu.rit.ds.registry.RegistryServer", "localhost", "" + port));
+			RegistryProxy registry = awaitRegistry(port);
+			String[] names = new String[offices];
+			for (int i = 0; i < offices; ++i) {
+				names[i] = "O" + i;
+				children.add(launch(logs, names[i], "GPSOffice", "localhost",
+						"" + port, names[i], "" + random.nextDouble() * area,
+						"" + random.nextDouble() * area));
+			}
+			GPSOfficeRef[] nodes = awaitOffices(registry, names);
+
+			LoadGenerator generator = new LoadGenerator(packages, concurrency);
+			long start = System.nanoTime();
+			generator.run(nodes, random, area, concurrency);
+			boolean finished = generator.await(start
+					+ TimeUnit.SECONDS.toNanos(timeout));
+			if (!finished) {
+				System.err.println("LoadGenerator: timed out");
+			}
+
+			Map<String, Object> results = new LinkedHashMap<String, Object>();
+			results.put("offices", offices);
+			results.put("packages", packages);
+			results.put("concurrency", concurrency);
+			generator.summarize(start, results);
+			for (String name : System.getProperties().stringPropertyNames()) {
+				if (name.startsWith("gps.")) {
+					results.put(name, System.getProperty(name));
+				}
+			}
+
+			Writer out = report == null ? new PrintWriter(System.out)
+					: new FileWriter(report);
+			write(results, format, out);
+			out.close();
+		} finally {
+			stop(children);
+		}
+		System.exit(0);
+	}
+
+	/**
+	 * Sends the packages. Returns once every package has been submitted.
+	 *
+	 * @param nodes
+	 *            Origin offices to choose from
+	 * @param random
+	 *            Source of destinations
+	 * @param area
+	 *            Side of the destination square
+	 * @param threads
+	 *            Number of submitting threads
+	 *
+	 * @exception Exception
+	 *                Thrown if the listener cannot be exported.
+	 */
+	public void run(final GPSOfficeRef[] nodes, final Random random,
+			final double area, int threads) throws Exception {
+		final RemoteEventListener<TrackPackage> listener = new RemoteEventListener<TrackPackage>() {
+			public void report(long seqnum, TrackPackage event) {
+				for (TrackPackage e : event.events()) {
+					record(e);
+				}
+			}
+		};
+		UnicastRemoteObject.exportObject(listener, 0);
+
+		final AtomicInteger next = new AtomicInteger();
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		for (int t = 0; t < threads; ++t) {
+			pool.execute(new Runnable() {
+				public void run() {
+					int i;
+					while ((i = next.getAndIncrement()) < packages) {
+						window.acquireUninterruptibly();
+						GPSOfficeRef origin;
+						double x, y;
+						synchronized (random) {
+							origin = nodes[random.nextInt(nodes.length)];
+							x = random.nextDouble() * area;
+							y = random.nextDouble() * area;
+						}
+						submit(i, origin, x, y, listener);
+					}
+				}
+			});
+		}
+		pool.shutdown();
+		pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Sends one package, registering its tracking number before the package
+	 * can generate any event.
+	 */
+	private void submit(int i, GPSOfficeRef origin, double x, double y,
+			RemoteEventListener<TrackPackage> listener) {
+		try {
+			long id = origin.assignPackageNumber();
+			synchronized (this) {
+				index.put(id, i);
+				submitted[i] = System.nanoTime();
+			}
+			origin.sendPackage(id, x, y, listener);
+		} catch (RemoteException exc) {
+			synchronized (this) {
+				if (submitted[i] == 0) {
+					submitted[i] = System.nanoTime();
+				}
+				finish(i, FAILED);
+			}
+		}
+	}
+
+	/**
+	 * Records one tracking event.
+	 */
+	private synchronized void record(TrackPackage event) {
+		int i = index.get(event.packageID());
+		if (i < 0 || outcome[i] != PENDING) {
+			return;
+		}
+		switch (event.kind()) {
+		case ARRIVED:
+			++hops[i];
+			break;
+		case DELIVERED:
+			finish(i, DELIVERED);
+			break;
+		case LOST:
+			finish(i, LOST);
+			break;
+		default:
+			break;
+		}
+	}
+
+	private void finish(int i, byte result) {
+		if (outcome[i] != PENDING) {
+			return;
+		}
+		outcome[i] = result;
+		completed[i] = System.nanoTime();
+		++done;
+		window.release();
+		if (done == packages) {
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Waits until every package is delivered, lost or failed, or the
+	 * deadline passes.
+	 *
+	 * @param deadline
+	 *            System.nanoTime() deadline
+	 *
+	 * @return True if every package finished
+	 */
+	public synchronized boolean await(long deadline)
+			throws InterruptedException {
+		long remaining;
+		while (done < packages
+				&& (remaining = deadline - System.nanoTime()) > 0) {
+			TimeUnit.NANOSECONDS.timedWait(this, remaining);
+		}
+		return done == packages;
+	}
+
+	/**
+	 * Adds the run's results to the given map.
+	 *
+	 * @param start
+	 *            System.nanoTime() at the start of the run
+	 * @param results
+	 *            Map of result names to values
+	 */
+	public synchronized void summarize(long start, Map<String, Object> results) {
+		int[] count = new int[4];
+		double[] latency = new double[packages];
+		int[] deliveredHops = new int[packages];
+		int n = 0;
+		long last = start;
+		for (int i = 0; i < packages; ++i) {
+			++count[outcome[i]];
+			if (outcome[i] == DELIVERED) {
+				latency[n] = (completed[i] - submitted[i]) / 1e6;
+				deliveredHops[n] = hops[i];
+				++n;
+			}
+			last = Math.max(last, completed[i]);
+		}
+		latency = Arrays.copyOf(latency, n);
+		deliveredHops = Arrays.copyOf(deliveredHops, n);
+		Arrays.sort(latency);
+		Arrays.sort(deliveredHops);
+		double elapsed = (last - start) / 1e9;
+
+		results.put("delivered", count[DELIVERED]);
+		results.put("lost", count[LOST]);
+		results.put("failed", count[FAILED]);
+		results.put("incomplete", count[PENDING]);
+		results.put("elapsed_s", elapsed);
+		results.put("packages_per_s", elapsed > 0 ? count[DELIVERED]
+				/ elapsed : 0.0);
+		double sum = 0;
+		for (double l : latency) {
+			sum += l;
+		}
+		results.put("latency_mean_ms", n > 0 ? sum / n : 0.0);
+		results.put("latency_p50_ms", percentile(latency, 0.50));
+		results.put("latency_p90_ms", percentile(latency, 0.90));
+		results.put("latency_p99_ms", percentile(latency, 0.99));
+		results.put("latency_p999_ms", percentile(latency, 0.999));
+		results.put("latency_max_ms", n > 0 ? latency[n - 1] : 0.0);
+		long hopSum = 0;
+		for (int h : deliveredHops) {
+			hopSum += h;
+		}
+		results.put("hops_mean", n > 0 ? (double) hopSum / n : 0.0);
+		results.put("hops_p50", n > 0 ? deliveredHops[(n - 1) / 2] : 0);
+		results.put("hops_p99", n > 0 ? deliveredHops[(int) (0.99 * (n - 1))]
+				: 0);
+		results.put("hops_max", n > 0 ? deliveredHops[n - 1] : 0);
+	}
+
+	/**
+	 * Returns the given percentile of a sorted array, by nearest rank.
+	 */
+	private static double percentile(double[] sorted, double p) {
+		if (sorted.length == 0) {
+			return 0.0;
+		}
+		int rank = (int) Math.ceil(p * sorted.length);
+		return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)];
+	}
+
+	/**
+	 * Writes the results as one JSON object or as a CSV header and row.
+	 */
+	private static void write(Map<String, Object> results, String format,
+			Writer out) throws IOException {
+		StringBuilder line = new StringBuilder();
+		if (format.equalsIgnoreCase("csv")) {
+			StringBuilder header = new StringBuilder();
+			for (Map.Entry<String, Object> e : results.entrySet()) {
+				if (header.length() > 0) {
+					header.append(',');
+					line.append(',');
+				}
+				header.append(e.getKey());
+				line.append(value(e.getValue()));
+			}
+			out.write(header + "\n");
+		} else {
+			line.append('{');
+			for (Map.Entry<String, Object> e : results.entrySet()) {
+				if (line.length() > 1) {
+					line.append(',');
+				}
+				line.append('"').append(e.getKey()).append("\":");
+				Object v = e.getValue();
+				line.append(v instanceof String ? "\"" + v + "\"" : value(v));
+			}
+			line.append('}');
+		}
+		out.write(line + "\n");
+	}
+
+	private static String value(Object v) {
+		if (v instanceof Double) {
+			return String.format(Locale.ROOT, "%.3f", (Double) v);
+		}
+		return String.valueOf(v);
+	}
+
+	/**
+	 * Starts a class in its own JVM on this program's class path.
+	 */
+	private static Process launch(File logs, String name, String... args)
+			throws IOException {
+		List<String> command = new ArrayList<String>();
+		command.add(System.getProperty("java.home") + File.separator + "bin"
+				+ File.separator + "java");
+		for (String prop : System.getProperties().stringPropertyNames()) {
+			if (prop.startsWith("gps.") && !prop.startsWith("gps.load")) {
+				command.add("-D" + prop + "=" + System.getProperty(prop));
+			}
+		}
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add("Start");
+		command.addAll(Arrays.asList(args));
+		ProcessBuilder builder = new ProcessBuilder(command);
+		builder.redirectErrorStream(true);
+		builder.redirectOutput(new File(logs, name + ".log"));
+		return builder.start();
+	}
+
+	/**
+	 * Waits for the Registry Server to answer.
+	 */
+	private static RegistryProxy awaitRegistry(int port) throws Exception {
+		for (int attempt = 0;; ++attempt) {
+			try {
+				RegistryProxy registry = new RegistryProxy("localhost", port);
+				registry.list("GPSOffice");
+				return registry;
+			} catch (Exception exc) {
+				if (attempt == 100) {
+					throw exc;
+				}
+				Thread.sleep(100);
+			}
+		}
+	}
+
+	/**
+	 * Waits for every office to be bound and returns references to them.
+	 */
+	private static GPSOfficeRef[] awaitOffices(RegistryProxy registry,
+			String[] names) throws Exception {
+		int attempt = 0;
+		while (registry.list("GPSOffice").size() < names.length) {
+			if (++attempt == 600) {
+				throw new IllegalStateException("GPSOffice nodes did not start");
+			}
+			Thread.sleep(100);
+		}
+		GPSOfficeRef[] nodes = new GPSOfficeRef[names.length];
+		for (int i = 0; i < names.length; ++i) {
+			nodes[i] = (GPSOfficeRef) registry.lookup(names[i]);
+		}
+		return nodes;
+	}
+
+	/**
+	 * Stops the child JVMs, offices before the Registry Server.
+	 */
+	private static void stop(List<Process> children) {
+		synchronized (children) {
+			for (int i = children.size() - 1; i >= 0; --i) {
+				children.get(i).destroy();
+			}
+			children.clear();
+		}
+	}
+
+	/**
+	 * Print a usage message and exit.
+	 */
+	private static void usage() {
+		System.err
+				.println("Usage: java LoadGenerator <offices> <packages> <concurrency> [<report>]");
+		System.err.println("<offices> = Number of GPSOffice nodes to start");
+		System.err.println("<packages> = Number of packages to send");
+		System.err.println("<concurrency> = Maximum packages in flight");
+		System.err.println("<report> = Report file, .csv for CSV");
+		System.exit(1);
+	}
+
+	/**
+	 * Parse an integer command line argument.
+	 *
+	 * @param arg
+	 *            Command line argument.
+	 * @param name
+	 *            Argument name.
+	 *
+	 * @return Integer value of <TT>arg</TT>.
+	 *
+	 * @exception IllegalArgumentException
+	 *                (unchecked exception) Thrown if <TT>arg</TT> cannot be
+	 *                parsed as an integer.
+	 */
+	private static int parseInt(String arg, String name) {
+		try {
+			return Integer.parseInt(arg);
+		} catch (NumberFormatException exc) {
+			System.err.printf("LoadGenerator: Invalid <%s>: \"%s\"", name, arg);
+			usage();
+			return 0;
+		}
+	}
+}
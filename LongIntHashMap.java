@@ -0,0 +1,165 @@
+import java.util.Arrays;
+
+/**
+ * @author Ganesh Chandrasekaran
+ * @version 10-17-2026
+ */
+
+/**
+ * Class LongIntHashMap is a hash map from primitive long keys to primitive
+ * int values, using open addressing with linear probing. Neither keys nor
+ * values are boxed, so lookups and updates do not allocate.
+ * <P>
+ * Class LongIntHashMap is not multiple thread safe.
+ */
+public class LongIntHashMap {
+	private static final float LOAD_FACTOR = 0.5f;
+
+	private final int missing;
+	private long[] keys;
+	private int[] values;
+	private boolean[] used;
+	private int size;
+	private int mask;
+
+	/**
+	 * Create a new, empty map.
+	 *
+	 * @param missing
+	 *            Value returned by get() for a key that is not in the map
+	 */
+	public LongIntHashMap(int missing) {
+		this.missing = missing;
+		allocate(16);
+	}
+
+	/**
+	 * Call this method to access the value mapped to a key
+	 *
+	 * @param key
+	 *            long
+	 *
+	 * @return The value, or the missing value if the key is not in the map
+	 */
+	public int get(long key) {
+		int i = find(key);
+		return used[i] ? values[i] : missing;
+	}
+
+	/**
+	 * Call this method to check whether a key is in the map
+	 *
+	 * @param key
+	 *            long
+	 *
+	 * @return True if the key is in the map
+	 */
+	public boolean containsKey(long key) {
+		return used[find(key)];
+	}
+
+	/**
+	 * Maps a key to a value, replacing any previous value.
+	 *
+	 * @param key
+	 *            long
+	 * @param value
+	 *            int
+	 */
+	public void put(long key, int value) {
+		int i = find(key);
+		if (!used[i]) {
+			used[i] = true;
+			keys[i] = key;
+			++size;
+			values[i] = value;
+			if (size > LOAD_FACTOR * keys.length) {
+				allocateAndRehash(keys.length * 2);
+			}
+		} else {
+			values[i] = value;
+		}
+	}
+
+	/**
+	 * Removes a key from the map.
+	 *
+	 * @param key
+	 *            long
+	 *
+	 * @return The value that was mapped to the key, or the missing value
+	 */
+	public int remove(long key) {
+		int i = find(key);
+		if (!used[i]) {
+			return missing;
+		}
+		int value = values[i];
+		used[i] = false;
+		--size;
+		// Re-insert the rest of the probe run so lookups do not stop early.
+		int j = (i + 1) & mask;
+		while (used[j]) {
+			long k = keys[j];
+			int v = values[j];
+			used[j] = false;
+			int slot = find(k);
+			used[slot] = true;
+			keys[slot] = k;
+			values[slot] = v;
+			j = (j + 1) & mask;
+		}
+		return value;
+	}
+
+	/**
+	 * Call this method to access the number of keys in the map
+	 *
+	 * @return Number of keys
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Removes every key from the map.
+	 */
+	public void clear() {
+		Arrays.fill(used, false);
+		size = 0;
+	}
+
+	/**
+	 * Returns the slot holding the key, or the empty slot where it belongs.
+	 */
+	private int find(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		int i = (int) (h ^ (h >>> 32)) & mask;
+		while (used[i] && keys[i] != key) {
+			i = (i + 1) & mask;
+		}
+		return i;
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		values = new int[capacity];
+		used = new boolean[capacity];
+		mask = capacity - 1;
+	}
+
+	private void allocateAndRehash(int capacity) {
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		boolean[] oldUsed = used;
+		allocate(capacity);
+		for (int i = 0; i < oldKeys.length; ++i) {
+			if (oldUsed[i]) {
+				int slot = find(oldKeys[i]);
+				used[slot] = true;
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+}
@@ -0,0 +1,315 @@
+import java.util.HashMap;
+
+/**
+ * @author Ganesh Chandrasekaran
+ * @version 10-17-2026
+ */
+
+/**
+ * Class NeighborTable holds the neighbors of a GPSOffice node: the <I>k</I>
+ * offices closest to it, <I>k</I> being <TT>gps.neighbors</TT> (default 3).
+ * The neighbors' names, coordinates, distances from the node and remote
+ * references are kept in parallel arrays of fixed capacity, so choosing a next
+ * hop reads primitive doubles and allocates nothing.
+ * <P>
+ * While the table is filled, the arrays are kept as a max-heap on the
+ * distance from the node: the farthest neighbor is at index 0, and an office
+ * closer than it replaces it in logarithmic time once the table is full.
+ * <P>
+ * Class NeighborTable is not multiple thread safe. A node fills a new table
+ * and then publishes it, and never changes a table once published.
+ */
+public class NeighborTable {
+	private final String[] names;
+	private final double[] x;
+	private final double[] y;
+	private final double[] distance;
+	private final GPSOfficeRef[] refs;
+	private int size;
+
+	/**
+	 * Create a new, empty neighbor table holding the configured number of
+	 * neighbors.
+	 *
+	 * @exception IllegalArgumentException
+	 *                (unchecked exception) Thrown if <TT>gps.neighbors</TT>
+	 *                is not positive
+	 */
+	public NeighborTable() {
+		this(fanOut());
+	}
+
+	/**
+	 * Create a new, empty neighbor table.
+	 *
+	 * @param capacity
+	 *            Maximum number of neighbors
+	 *
+	 * @exception IllegalArgumentException
+	 *                (unchecked exception) Thrown if <TT>capacity</TT> is not
+	 *                positive
+	 */
+	public NeighborTable(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("NeighborTable(): capacity = "
+					+ capacity + " illegal");
+		}
+		this.names = new String[capacity];
+		this.x = new double[capacity];
+		this.y = new double[capacity];
+		this.distance = new double[capacity];
+		this.refs = new GPSOfficeRef[capacity];
+	}
+
+	/**
+	 * Call this method to find the configured number of neighbors per node
+	 *
+	 * @return The value of <TT>gps.neighbors</TT>, default 3
+	 *
+	 * @exception IllegalArgumentException
+	 *                (unchecked exception) Thrown if <TT>gps.neighbors</TT>
+	 *                is not positive
+	 */
+	public static int fanOut() {
+		int k = Integer.getInteger("gps.neighbors", 3);
+		if (k <= 0) {
+			throw new IllegalArgumentException("NeighborTable: gps.neighbors = "
+					+ k + " illegal");
+		}
+		return k;
+	}
+
+	/**
+	 * Offers an office as a neighbor. It is taken if the table is not full,
+	 * or in place of the farthest neighbor if it is closer than that one.
+	 *
+	 * @param name
+	 *            Name of the office
+	 * @param ox
+	 *            X-coordinate of the office
+	 * @param oy
+	 *            Y-coordinate of the office
+	 * @param dist
+	 *            Distance from the node to the office
+	 * @param ref
+	 *            Remote reference of the office
+	 *
+	 * @return True if the office was taken
+	 */
+	public boolean offer(String name, double ox, double oy, double dist,
+			GPSOfficeRef ref) {
+		if (size < names.length) {
+			int i = size++;
+			while (i > 0) {
+				int parent = (i - 1) >> 1;
+				if (distance[parent] >= dist) {
+					break;
+				}
+				move(parent, i);
+				i = parent;
+			}
+			set(i, name, ox, oy, dist, ref);
+			return true;
+		}
+		if (dist >= distance[0]) {
+			return false;
+		}
+		int i = 0;
+		for (;;) {
+			int child = 2 * i + 1;
+			if (child >= size) {
+				break;
+			}
+			if (child + 1 < size && distance[child + 1] > distance[child]) {
+				++child;
+			}
+			if (distance[child] <= dist) {
+				break;
+			}
+			move(child, i);
+			i = child;
+		}
+		set(i, name, ox, oy, dist, ref);
+		return true;
+	}
+
+	/**
+	 * Offers an indexed office as a neighbor of the node at the given
+	 * location; see offer(String, double, double, double, GPSOfficeRef).
+	 *
+	 * @param entry
+	 *            Office index entry
+	 * @param px
+	 *            X-coordinate of the node
+	 * @param py
+	 *            Y-coordinate of the node
+	 *
+	 * @return True if the office was taken
+	 */
+	public boolean offer(OfficeIndex.Entry entry, double px, double py) {
+		return offer(entry.name, entry.x, entry.y, entry.distance(px, py),
+				entry.office);
+	}
+
+	/**
+	 * Call this method to find out if an office would be taken by offer()
+	 *
+	 * @param dist
+	 *            Distance from the node to the office
+	 *
+	 * @return True if the table is not full or the office is closer than
+	 *         the farthest neighbor
+	 */
+	public boolean wouldTake(double dist) {
+		return size < names.length || dist < distance[0];
+	}
+
+	/**
+	 * Call this method to access the number of neighbors
+	 *
+	 * @return Number of neighbors
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Call this method to access the maximum number of neighbors
+	 *
+	 * @return Capacity of the table
+	 */
+	public int capacity() {
+		return names.length;
+	}
+
+	/**
+	 * Call this method to find a neighbor by name
+	 *
+	 * @param name
+	 *            Name of the office
+	 *
+	 * @return Index of the neighbor, or -1 if the office is not a neighbor
+	 */
+	public int indexOf(String name) {
+		for (int i = 0; i < size; ++i) {
+			if (names[i].equals(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Call this method to find out if an office is a neighbor
+	 *
+	 * @param name
+	 *            Name of the office
+	 *
+	 * @return True if the office is a neighbor
+	 */
+	public boolean contains(String name) {
+		return indexOf(name) >= 0;
+	}
+
+	/**
+	 * Call this method to access the name of a neighbor
+	 *
+	 * @param i
+	 *            Index of the neighbor
+	 *
+	 * @return Name of the office
+	 */
+	public String name(int i) {
+		return names[i];
+	}
+
+	/**
+	 * Call this method to access the remote reference of a neighbor by name
+	 *
+	 * @param name
+	 *            Name of the office
+	 *
+	 * @return Remote reference, or null if the office is not a neighbor
+	 */
+	public GPSOfficeRef ref(String name) {
+		int i = indexOf(name);
+		return i < 0 ? null : refs[i];
+	}
+
+	/**
+	 * Call this method to access the remote references of all neighbors
+	 *
+	 * @return A new map from name to remote reference
+	 */
+	public HashMap<String, GPSOfficeRef> refs() {
+		HashMap<String, GPSOfficeRef> map = new HashMap<String, GPSOfficeRef>();
+		for (int i = 0; i < size; ++i) {
+			map.put(names[i], refs[i]);
+		}
+		return map;
+	}
+
+	/**
+	 * Call this method to calculate the distance from a neighbor to a
+	 * destination
+	 *
+	 * @param i
+	 *            Index of the neighbor
+	 * @param destX
+	 *            double
+	 * @param destY
+	 *            double
+	 *
+	 * @return Distance between the neighbor and the destination
+	 */
+	public double distance(int i, double destX, double destY) {
+		double dx = destX - x[i];
+		double dy = destY - y[i];
+		return Math.sqrt((dx * dx) + (dy * dy));
+	}
+
+	/**
+	 * Finds the neighbor that is closest to a destination.
+	 *
+	 * @param ownDistance
+	 *            Distance from the node to the destination
+	 * @param destX
+	 *            double
+	 * @param destY
+	 *            double
+	 *
+	 * @return Index of the neighbor, or -1 if no neighbor is closer to the
+	 *         destination than the node
+	 */
+	public int nearest(double ownDistance, double destX, double destY) {
+		double nearestDist = ownDistance;
+		int nearest = -1;
+		for (int i = 0; i < size; ++i) {
+			double dx = destX - x[i];
+			double dy = destY - y[i];
+			double d = Math.sqrt((dx * dx) + (dy * dy));
+			if (nearestDist > d) {
+				nearestDist = d;
+				nearest = i;
+			}
+		}
+		return nearest;
+	}
+
+	private void move(int from, int to) {
+		names[to] = names[from];
+		x[to] = x[from];
+		y[to] = y[from];
+		distance[to] = distance[from];
+		refs[to] = refs[from];
+	}
+
+	private void set(int i, String name, double ox, double oy, double dist,
+			GPSOfficeRef ref) {
+		names[i] = name;
+		x[i] = ox;
+		y[i] = oy;
+		distance[i] = dist;
+		refs[i] = ref;
+	}
+}
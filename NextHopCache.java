@@ -0,0 +1,194 @@
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * @author Ganesh Chandrasekaran
+ * @version 10-17-2026
+ */
+
+/**
+ * Class NextHopCache remembers the next hop a GPSOffice node chose for a
+ * destination cell, so that packages to the same place do not repeat the
+ * choice. Destinations are quantized into square cells of side
+ * <TT>gps.hopCellSize</TT> (default 1), and a cell is keyed by the Morton
+ * (Z-order) code of its coordinates.
+ * <P>
+ * The next hop is the closest of the node and its neighbors to the
+ * destination, so the destinations sharing a next hop form a convex Voronoi
+ * cell. A destination cell is therefore cached only when all four of its
+ * corners have the same next hop, which makes a cached answer exact for any
+ * destination in the cell.
+ * <P>
+ * The cache is direct-mapped with <TT>gps.hopCacheSize</TT> slots (default
+ * 4096, 0 to disable); a new cell replaces whatever occupied its slot. Each
+ * entry records the neighbor table it was computed from, and only counts as a
+ * hit against that same table, so replacing the neighbor table invalidates
+ * the whole cache.
+ */
+public class NextHopCache {
+
+	/**
+	 * Class Entry is one cached cell.
+	 */
+	private static class Entry {
+		final long cell;
+		final Object table;
+		final String hop;
+
+		Entry(long cell, Object table, String hop) {
+			this.cell = cell;
+			this.table = table;
+			this.hop = hop;
+		}
+	}
+
+	/**
+	 * Returned by lookup() when the cell is not cached.
+	 */
+	public static final String MISS = new String("miss");
+
+	/**
+	 * Returned by cellOf() for a destination too far out to be cached.
+	 */
+	public static final long NO_CELL = -1L;
+
+	private final double cellSize;
+	private final AtomicReferenceArray<Entry> slots;
+	private final int mask;
+
+	/**
+	 * Create a new next hop cache configured from the system properties.
+	 */
+	public NextHopCache() {
+		this(Double.parseDouble(System.getProperty("gps.hopCellSize", "1")),
+				Integer.getInteger("gps.hopCacheSize", 4096));
+	}
+
+	/**
+	 * Create a new next hop cache.
+	 *
+	 * @param cellSize
+	 *            Side of a destination cell
+	 * @param size
+	 *            Number of slots, rounded up to a power of two; 0 disables
+	 *            the cache
+	 */
+	public NextHopCache(double cellSize, int size) {
+		if (!(cellSize > 0)) {
+			throw new IllegalArgumentException("NextHopCache(): cellSize = "
+					+ cellSize + " illegal");
+		}
+		this.cellSize = cellSize;
+		int capacity = size <= 1 ? Math.max(0, size) : Integer
+				.highestOneBit(size - 1) << 1;
+		this.slots = new AtomicReferenceArray<Entry>(Math.max(1, capacity));
+		this.mask = capacity - 1;
+	}
+
+	/**
+	 * Call this method to check whether the cache is enabled
+	 *
+	 * @return True if the cache has any slots
+	 */
+	public boolean enabled() {
+		return mask >= 0;
+	}
+
+	/**
+	 * Call this method to access the side of a destination cell
+	 *
+	 * @return Cell size
+	 */
+	public double cellSize() {
+		return cellSize;
+	}
+
+	/**
+	 * Looks up the next hop cached for a destination cell.
+	 *
+	 * @param cell
+	 *            Cell key from cellOf()
+	 * @param table
+	 *            The neighbor table in use
+	 *
+	 * @return Name of the next hop, null if the package is delivered here, or
+	 *         MISS if the cell is not cached for this table
+	 */
+	public String lookup(long cell, Object table) {
+		if (mask < 0 || cell == NO_CELL) {
+			return MISS;
+		}
+		Entry entry = slots.get(slotOf(cell));
+		if (entry == null || entry.cell != cell || entry.table != table) {
+			return MISS;
+		}
+		return entry.hop;
+	}
+
+	/**
+	 * Caches the next hop of a destination cell.
+	 *
+	 * @param cell
+	 *            Cell key from cellOf()
+	 * @param table
+	 *            The neighbor table the next hop was chosen from
+	 * @param hop
+	 *            Name of the next hop, or null if packages are delivered here
+	 */
+	public void store(long cell, Object table, String hop) {
+		if (mask >= 0 && cell != NO_CELL) {
+			slots.set(slotOf(cell), new Entry(cell, table, hop));
+		}
+	}
+
+	/**
+	 * Call this method to find the cell holding a destination
+	 *
+	 * @param x
+	 *            double
+	 * @param y
+	 *            double
+	 *
+	 * @return Morton code of the cell, or NO_CELL
+	 */
+	public long cellOf(double x, double y) {
+		double qx = Math.floor(x / cellSize);
+		double qy = Math.floor(y / cellSize);
+		if (!(qx >= Integer.MIN_VALUE && qx < Integer.MAX_VALUE
+				&& qy >= Integer.MIN_VALUE && qy < Integer.MAX_VALUE)) {
+			return NO_CELL;
+		}
+		return interleave(((int) qx) ^ Integer.MIN_VALUE)
+				| (interleave(((int) qy) ^ Integer.MIN_VALUE) << 1);
+	}
+
+	/**
+	 * Call this method to access the lower corner of a cell along one axis
+	 *
+	 * @param v
+	 *            Coordinate inside the cell
+	 *
+	 * @return Coordinate of the cell's lower edge
+	 */
+	public double lowerEdge(double v) {
+		return Math.floor(v / cellSize) * cellSize;
+	}
+
+	/**
+	 * Spreads the 32 bits of a cell index, offset so that negative cells sort
+	 * first, over the even bits of a long.
+	 */
+	private static long interleave(int v) {
+		long x = v & 0xFFFFFFFFL;
+		x = (x | (x << 16)) & 0x0000FFFF0000FFFFL;
+		x = (x | (x << 8)) & 0x00FF00FF00FF00FFL;
+		x = (x | (x << 4)) & 0x0F0F0F0F0F0F0F0FL;
+		x = (x | (x << 2)) & 0x3333333333333333L;
+		x = (x | (x << 1)) & 0x5555555555555555L;
+		return x;
+	}
+
+	private int slotOf(long cell) {
+		long h = cell * 0x9E3779B97F4A7C15L;
+		return (int) (h >>> 32) & mask;
+	}
+}
@@ -0,0 +1,142 @@
+import java.io.Serializable;
+
+/**
+ * @author Ganesh Chandrasekaran
+ * @version 10-17-2026
+ */
+
+/**
+ * Class OfficeDescriptor is an immutable snapshot of the identity of a
+ * GPSOffice: its name, its location, the epoch at which the office object was
+ * started and the office ID it places in the tracking numbers it assigns. A
+ * peer fetches the whole descriptor in a single remote call instead of
+ * calling getOfficeName(), getX() and getY() one at a time.
+ * <P>
+ * The epoch tells apart two incarnations of an office bound under the same
+ * name. An office that keeps a write-ahead journal says so, as it takes up
+ * the packages it held when it is restarted. An office says too whether its
+ * office ID is settled: from then on it may have issued tracking numbers
+ * under the ID, and it never changes it.
+ */
+public class OfficeDescriptor implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	public final String name;
+	public final double x;
+	public final double y;
+	public final long epoch;
+	public final int officeId;
+	public final boolean journaled;
+	public final boolean settled;
+
+	/**
+	 * Create a new office descriptor for an office without a journal, whose
+	 * office ID is settled.
+	 *
+	 * @param name
+	 *            String
+	 * @param x
+	 *            double
+	 * @param y
+	 *            double
+	 * @param epoch
+	 *            long
+	 * @param officeId
+	 *            int
+	 */
+	public OfficeDescriptor(String name, double x, double y, long epoch,
+			int officeId) {
+		this(name, x, y, epoch, officeId, false);
+	}
+
+	/**
+	 * Create a new office descriptor for an office whose office ID is
+	 * settled.
+	 *
+	 * @param name
+	 *            String
+	 * @param x
+	 *            double
+	 * @param y
+	 *            double
+	 * @param epoch
+	 *            long
+	 * @param officeId
+	 *            int
+	 * @param journaled
+	 *            True if the office keeps a write-ahead journal
+	 */
+	public OfficeDescriptor(String name, double x, double y, long epoch,
+			int officeId, boolean journaled) {
+		this(name, x, y, epoch, officeId, journaled, true);
+	}
+
+	/**
+	 * Create a new office descriptor.
+	 *
+	 * @param name
+	 *            String
+	 * @param x
+	 *            double
+	 * @param y
+	 *            double
+	 * @param epoch
+	 *            long
+	 * @param officeId
+	 *            int
+	 * @param journaled
+	 *            True if the office keeps a write-ahead journal
+	 * @param settled
+	 *            True if the office ID is settled
+	 */
+	public OfficeDescriptor(String name, double x, double y, long epoch,
+			int officeId, boolean journaled, boolean settled) {
+		this.name = name;
+		this.x = x;
+		this.y = y;
+		this.epoch = epoch;
+		this.officeId = officeId;
+		this.journaled = journaled;
+		this.settled = settled;
+	}
+
+	/**
+	 * Call this method to calculate the Euclidean distance between this
+	 * office and the given point
+	 *
+	 * @param px
+	 *            double
+	 * @param py
+	 *            double
+	 *
+	 * @return Distance between this office and the point
+	 */
+	public double distance(double px, double py) {
+		return Math.sqrt(((px - x) * (px - x)) + ((py - y) * (py - y)));
+	}
+
+	/**
+	 * Call this method to check whether the given descriptor describes the
+	 * same incarnation of the same office
+	 *
+	 * @param obj
+	 *            Object
+	 *
+	 * @return True if name and epoch match
+	 */
+	public boolean equals(Object obj) {
+		if (!(obj instanceof OfficeDescriptor)) {
+			return false;
+		}
+		OfficeDescriptor other = (OfficeDescriptor) obj;
+		return name.equals(other.name) && epoch == other.epoch;
+	}
+
+	public int hashCode() {
+		return name.hashCode() * 31 + (int) (epoch ^ (epoch >>> 32));
+	}
+
+	public String toString() {
+		return name + "(" + x + "," + y + ")#" + epoch + "/" + officeId;
+	}
+}
@@ -0,0 +1,326 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * @author Ganesh Chandrasekaran
+ * @version 10-17-2026
+ */
+
+/**
+ * Class OfficeIndex is a local spatial index of the GPSOffice locations known
+ * to a GPSOffice node. The locations are kept in a 2-d tree so the k nearest
+ * offices to a point are found in logarithmic time without contacting any
+ * other node.
+ * <P>
+ * The tree is rebuilt lazily: insertions go straight into the tree, while a
+ * removal only marks the tree stale and the next query rebuilds a balanced
+ * tree from the remaining entries.
+ */
+public class OfficeIndex {
+
+	/**
+	 * Class Entry holds the location of one indexed GPSOffice together with
+	 * its remote reference.
+	 */
+	public static class Entry {
+		public final String name;
+		public final double x;
+		public final double y;
+		public final long epoch;
+		public final int officeId;
+		public final boolean journaled;
+		public final GPSOfficeRef office;
+
+		/**
+		 * Create a new index entry.
+		 *
+		 * @param descriptor
+		 *            OfficeDescriptor
+		 * @param office
+		 *            GPSOfficeRef
+		 */
+		public Entry(OfficeDescriptor descriptor, GPSOfficeRef office) {
+			this.name = descriptor.name;
+			this.x = descriptor.x;
+			this.y = descriptor.y;
+			this.epoch = descriptor.epoch;
+			this.officeId = descriptor.officeId;
+			this.journaled = descriptor.journaled;
+			this.office = office;
+		}
+
+		/**
+		 * Call this method to calculate the Euclidean distance between this
+		 * entry and the given point
+		 *
+		 * @param px
+		 *            double
+		 * @param py
+		 *            double
+		 *
+		 * @return Distance between this entry and the point
+		 */
+		public double distance(double px, double py) {
+			return Math.sqrt(((px - x) * (px - x)) + ((py - y) * (py - y)));
+		}
+	}
+
+	/**
+	 * Class Node is one node of the 2-d tree. Even depths split on X, odd
+	 * depths split on Y.
+	 */
+	private static class Node {
+		final Entry entry;
+		final boolean splitX;
+		Node left;
+		Node right;
+
+		Node(Entry entry, boolean splitX) {
+			this.entry = entry;
+			this.splitX = splitX;
+		}
+	}
+
+	/**
+	 * Class Candidate is a query result paired with its distance to the query
+	 * point.
+	 */
+	private static class Candidate {
+		final Entry entry;
+		final double distance;
+
+		Candidate(Entry entry, double distance) {
+			this.entry = entry;
+			this.distance = distance;
+		}
+	}
+
+	private static final Comparator<Candidate> FARTHEST_FIRST = new Comparator<Candidate>() {
+		public int compare(Candidate a, Candidate b) {
+			return Double.compare(b.distance, a.distance);
+		}
+	};
+
+	private HashMap<String, Entry> entries = new HashMap<String, Entry>();
+
+	private Node root;
+
+	private boolean stale;
+
+	/**
+	 * Adds or replaces the entry for the given GPSOffice
+	 *
+	 * @param entry
+	 *            Entry
+	 */
+	public synchronized void put(Entry entry) {
+		Entry previous = entries.put(entry.name, entry);
+		if (previous != null) {
+			stale = true;
+		} else if (!stale) {
+			root = insert(root, entry, true);
+		}
+	}
+
+	/**
+	 * Removes the entry for the given GPSOffice, if any
+	 *
+	 * @param name
+	 *            String
+	 *
+	 * @return The removed entry, or null if the office was not indexed
+	 */
+	public synchronized Entry remove(String name) {
+		Entry previous = entries.remove(name);
+		if (previous != null) {
+			stale = true;
+		}
+		return previous;
+	}
+
+	/**
+	 * Removes every entry whose name is not in the given collection
+	 *
+	 * @param names
+	 *            Collection<String>
+	 */
+	public synchronized void retainAll(Collection<String> names) {
+		HashSet<String> keep = new HashSet<String>(names);
+		Iterator<String> iter = entries.keySet().iterator();
+		while (iter.hasNext()) {
+			if (!keep.contains(iter.next())) {
+				iter.remove();
+				stale = true;
+			}
+		}
+	}
+
+	/**
+	 * Call this method to access the entry for the given GPSOffice
+	 *
+	 * @param name
+	 *            String
+	 *
+	 * @return The entry, or null if the office is not indexed
+	 */
+	public synchronized Entry get(String name) {
+		return entries.get(name);
+	}
+
+	/**
+	 * Call this method to check whether the given GPSOffice is indexed
+	 *
+	 * @param name
+	 *            String
+	 *
+	 * @return True if the office is indexed
+	 */
+	public synchronized boolean contains(String name) {
+		return entries.containsKey(name);
+	}
+
+	/**
+	 * Call this method to access every indexed office
+	 *
+	 * @return Snapshot of the entries, in no particular order
+	 */
+	public synchronized List<Entry> entries() {
+		return new ArrayList<Entry>(entries.values());
+	}
+
+	/**
+	 * Call this method to access the number of indexed offices
+	 *
+	 * @return Number of entries
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Finds the k offices nearest to the given point, nearest first.
+	 *
+	 * @param px
+	 *            double
+	 * @param py
+	 *            double
+	 * @param k
+	 *            int
+	 * @param exclude
+	 *            Name of an office to leave out of the result (may be null)
+	 *
+	 * @return At most k entries, in increasing order of distance
+	 */
+	public synchronized List<Entry> nearest(double px, double py, int k,
+			String exclude) {
+		if (stale) {
+			rebuild();
+		}
+		PriorityQueue<Candidate> best = new PriorityQueue<Candidate>(
+				Math.max(1, k + 1), FARTHEST_FIRST);
+		if (k > 0) {
+			search(root, px, py, k, exclude, best);
+		}
+		Candidate[] sorted = best.toArray(new Candidate[best.size()]);
+		Arrays.sort(sorted, new Comparator<Candidate>() {
+			public int compare(Candidate a, Candidate b) {
+				return Double.compare(a.distance, b.distance);
+			}
+		});
+		List<Entry> result = new ArrayList<Entry>(sorted.length);
+		for (Candidate c : sorted) {
+			result.add(c.entry);
+		}
+		return result;
+	}
+
+	/**
+	 * Walks the tree, keeping the k best candidates in a max-heap and pruning
+	 * every subtree whose splitting plane is farther than the current k-th
+	 * best distance.
+	 */
+	private static void search(Node node, double px, double py, int k,
+			String exclude, PriorityQueue<Candidate> best) {
+		if (node == null) {
+			return;
+		}
+		Entry e = node.entry;
+		if (exclude == null || !exclude.equals(e.name)) {
+			double d = e.distance(px, py);
+			if (best.size() < k) {
+				best.add(new Candidate(e, d));
+			} else if (d < best.peek().distance) {
+				best.poll();
+				best.add(new Candidate(e, d));
+			}
+		}
+
+		double delta = node.splitX ? px - e.x : py - e.y;
+		Node near = delta < 0 ? node.left : node.right;
+		Node far = delta < 0 ? node.right : node.left;
+
+		search(near, px, py, k, exclude, best);
+		if (best.size() < k || Math.abs(delta) < best.peek().distance) {
+			search(far, px, py, k, exclude, best);
+		}
+	}
+
+	/**
+	 * Inserts an entry below the given node without rebalancing.
+	 */
+	private static Node insert(Node node, Entry entry, boolean splitX) {
+		if (node == null) {
+			return new Node(entry, splitX);
+		}
+		double delta = node.splitX ? entry.x - node.entry.x : entry.y
+				- node.entry.y;
+		if (delta < 0) {
+			node.left = insert(node.left, entry, !node.splitX);
+		} else {
+			node.right = insert(node.right, entry, !node.splitX);
+		}
+		return node;
+	}
+
+	/**
+	 * Rebuilds a balanced tree from the current entries.
+	 */
+	private void rebuild() {
+		Entry[] all = entries.values().toArray(new Entry[entries.size()]);
+		root = build(all, 0, all.length, true);
+		stale = false;
+	}
+
+	/**
+	 * Builds a balanced subtree over all[from..to) by splitting on the median.
+	 */
+	private static Node build(Entry[] all, int from, int to,
+			final boolean splitX) {
+		if (from >= to) {
+			return null;
+		}
+		Arrays.sort(all, from, to, new Comparator<Entry>() {
+			public int compare(Entry a, Entry b) {
+				return splitX ? Double.compare(a.x, b.x) : Double.compare(
+						a.y, b.y);
+			}
+		});
+		int mid = (from + to) >>> 1;
+		// Equal keys must go right, matching insert().
+		double key = splitX ? all[mid].x : all[mid].y;
+		while (mid > from && (splitX ? all[mid - 1].x : all[mid - 1].y) == key) {
+			mid--;
+		}
+		Node node = new Node(all[mid], splitX);
+		node.left = build(all, from, mid, !splitX);
+		node.right = build(all, mid + 1, to, !splitX);
+		return node;
+	}
+}
@@ -0,0 +1,345 @@
+import edu.rit.ds.RemoteEventListener;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * @author Ganesh Chandrasekaran
+ * @version 10-17-2026
+ */
+
+/**
+ * Class OfficeJournal is the write-ahead journal in which a GPSOffice node
+ * records the packages it accepts and hands off, so that the packages it held
+ * when it died can be taken up again when it restarts.
+ * <P>
+ * The journal is a SegmentedLog of three kinds of records. A LISTENER
+ * record (<TT>int</TT> listener id, serialized remote reference) defines a
+ * Customer listener before its first use in the segment, so that an ACCEPT
+ * record (<TT>long</TT> package number, <TT>double</TT> destination X and Y,
+ * <TT>int</TT> listener id, <TT>byte</TT> service class) is of fixed size. A
+ * HANDOFF record (<TT>long</TT> package number) marks a package as delivered,
+ * handed to a neighbor or lost. A package whose listener can no longer be
+ * restored is still taken up, with a DetachedListener in its place, so that
+ * it is delivered and Headquarters hears of it even though its Customer does
+ * not.
+ * <P>
+ * A node syncs its ACCEPT records before it acknowledges the packages, and
+ * never syncs HANDOFF records, so a package may be taken up twice after a
+ * crash but is never dropped. Segment files are deleted oldest first, once
+ * every package accepted in them has been handed off.
+ * <P>
+ * Segments are <TT>gps.officeJournalSegmentBytes</TT> bytes (default 16 MB);
+ * <TT>gps.officeJournalForceMillis</TT> (default 0) makes the force thread
+ * pause between forces to gather larger groups. Every run starts a new
+ * segment.
+ */
+public class OfficeJournal {
+
+	/**
+	 * Class DetachedListener stands in for a Customer listener that could not
+	 * be restored from the journal. It ignores the events reported to it.
+	 */
+	public static class DetachedListener implements
+			RemoteEventListener<TrackPackage>, Serializable {
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The one detached listener, so that the events of every detached
+		 * package share one queue at each office.
+		 */
+		public static final DetachedListener INSTANCE = new DetachedListener();
+
+		private DetachedListener() {
+		}
+
+		public void report(long seqnum, TrackPackage event) {
+		}
+
+		private Object readResolve() {
+			return INSTANCE;
+		}
+	}
+
+	private static final byte LISTENER = 1;
+	private static final byte ACCEPT = 2;
+	private static final byte HANDOFF = 3;
+	private static final int ACCEPT_PAYLOAD = 8 + 8 + 8 + 4 + 1;
+	private static final ServiceClass[] SERVICES = ServiceClass.values();
+	private static final int HANDOFF_PAYLOAD = 8;
+
+	private final SegmentedLog log;
+
+	// Listener ids of the current segment.
+	private final HashMap<RemoteEventListener<TrackPackage>, Integer> listenerIds = new HashMap<RemoteEventListener<TrackPackage>, Integer>();
+
+	// Segment of the ACCEPT record of each package not yet handed off, and
+	// the number of such packages per segment.
+	private final LongIntHashMap pending = new LongIntHashMap(-1);
+	private int[] live = new int[16];
+	private int oldest;
+
+	private File[] recovered = new File[0];
+
+	/**
+	 * Open the journal in the given directory, creating the directory if
+	 * needed. Nothing is written until the first append.
+	 *
+	 * @param directory
+	 *            Journal directory
+	 *
+	 * @exception IOException
+	 *                Thrown if the directory cannot be created.
+	 */
+	public OfficeJournal(File directory) throws IOException {
+		log = new SegmentedLog(directory, Integer.getInteger(
+				"gps.officeJournalSegmentBytes", 16 << 20), Long.getLong(
+				"gps.officeJournalForceMillis", 0), "office-journal-force");
+		oldest = log.firstSegment();
+	}
+
+	/**
+	 * Reads back the segments of earlier runs and returns the packages that
+	 * were accepted but never handed off, oldest first. The caller takes them
+	 * up again, journalling them anew, and then calls commitRecovery() to
+	 * delete the old segments. Source routes are not journalled, so the
+	 * recovered packages are routed greedily.
+	 *
+	 * @return Parcels to take up again
+	 *
+	 * @exception IOException
+	 *                Thrown if a segment cannot be read.
+	 */
+	public synchronized List<Parcel> recover() throws IOException {
+		final LinkedHashMap<Long, Parcel> held = new LinkedHashMap<Long, Parcel>();
+		File[] old = log.earlierSegments();
+		for (File file : old) {
+			final ArrayList<RemoteEventListener<TrackPackage>> listeners = new ArrayList<RemoteEventListener<TrackPackage>>();
+			SegmentedLog.read(file, new SegmentedLog.Visitor() {
+				public boolean record(byte type, MappedByteBuffer buf,
+						int length) {
+					if (type == ACCEPT && length == ACCEPT_PAYLOAD) {
+						long packageID = buf.getLong();
+						double destX = buf.getDouble();
+						double destY = buf.getDouble();
+						int listenerId = buf.getInt();
+						int service = buf.get();
+						if (listenerId < 0 || listenerId >= listeners.size()
+								|| service < 0 || service >= SERVICES.length) {
+							return false;
+						}
+						RemoteEventListener<TrackPackage> listener = listeners
+								.get(listenerId);
+						if (listener == null) {
+							listener = DetachedListener.INSTANCE;
+						}
+						held.put(packageID, new Parcel(packageID, destX, destY,
+								listener, SERVICES[service]));
+					} else if (type == HANDOFF && length == HANDOFF_PAYLOAD) {
+						held.remove(buf.getLong());
+					} else if (type == LISTENER && length >= 4) {
+						int listenerId = buf.getInt();
+						byte[] ref = new byte[length - 4];
+						buf.get(ref);
+						if (listenerId != listeners.size()) {
+							return false;
+						}
+						listeners.add(readListener(ref));
+					}
+					return true;
+				}
+			});
+		}
+		recovered = old;
+		return new ArrayList<Parcel>(held.values());
+	}
+
+	/**
+	 * Waits until the packages taken up again after recover() are on disk,
+	 * then deletes the segments of earlier runs.
+	 *
+	 * @exception InterruptedIOException
+	 *                Thrown if the calling thread is interrupted.
+	 */
+	public void commitRecovery() throws InterruptedIOException {
+		sync();
+		File[] old;
+		synchronized (this) {
+			old = recovered;
+			recovered = new File[0];
+		}
+		for (File file : old) {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Appends the acceptance of a package. It is durable once a later sync()
+	 * returns.
+	 *
+	 * @param parcel
+	 *            Parcel
+	 *
+	 * @exception IOException
+	 *                Thrown if the journal is closed, a new segment cannot be
+	 *                created, or the listener cannot be serialized.
+	 */
+	public synchronized void accepted(Parcel parcel) throws IOException {
+		if (log.reserve(ACCEPT_PAYLOAD, 1)) {
+			rolled();
+		}
+		Integer listenerId = listenerIds.get(parcel.listener);
+		if (listenerId == null) {
+			byte[] ref = writeListener(parcel.listener);
+			if (log.reserve(4 + ref.length + ACCEPT_PAYLOAD, 2)) {
+				rolled();
+			}
+			listenerId = listenerIds.size();
+			MappedByteBuffer buf = log.begin(LISTENER, 4 + ref.length);
+			buf.putInt(listenerId);
+			buf.put(ref);
+			log.end();
+			listenerIds.put(parcel.listener, listenerId);
+		}
+
+		MappedByteBuffer buf = log.begin(ACCEPT, ACCEPT_PAYLOAD);
+		buf.putLong(parcel.packageID);
+		buf.putDouble(parcel.destX);
+		buf.putDouble(parcel.destY);
+		buf.putInt(listenerId);
+		buf.put((byte) parcel.service.ordinal());
+		log.end();
+
+		int current = log.currentSegment();
+		int previous = pending.get(parcel.packageID);
+		if (previous >= 0) {
+			release(previous);
+		}
+		pending.put(parcel.packageID, current);
+		++live[current];
+	}
+
+	/**
+	 * Appends the hand-off of a package: it was delivered, passed to a
+	 * neighbor, or reported lost. Errors are ignored; at worst the package is
+	 * taken up again after a restart.
+	 *
+	 * @param packageID
+	 *            long
+	 */
+	public synchronized void handedOff(long packageID) {
+		int accepted = pending.get(packageID);
+		if (accepted < 0) {
+			return;
+		}
+		pending.remove(packageID);
+		try {
+			if (log.reserve(HANDOFF_PAYLOAD, 1)) {
+				rolled();
+			}
+		} catch (IOException exc) {
+			return;
+		}
+		MappedByteBuffer buf = log.begin(HANDOFF, HANDOFF_PAYLOAD);
+		buf.putLong(packageID);
+		log.end();
+		release(accepted);
+	}
+
+	/**
+	 * Waits until every record appended so far is on disk.
+	 *
+	 * @exception InterruptedIOException
+	 *                Thrown if the calling thread is interrupted.
+	 */
+	public void sync() throws InterruptedIOException {
+		log.sync();
+	}
+
+	/**
+	 * Forces the remaining appends to disk and stops the journal.
+	 */
+	public void close() {
+		log.close();
+	}
+
+	/**
+	 * Starts the bookkeeping of a new segment.
+	 */
+	private void rolled() {
+		int current = log.currentSegment();
+		if (current >= live.length) {
+			live = Arrays.copyOf(live, Math.max(current + 1, live.length * 2));
+		}
+		listenerIds.clear();
+		trim();
+	}
+
+	/**
+	 * Counts one package of a segment as handed off.
+	 */
+	private void release(int segmentNumber) {
+		if (--live[segmentNumber] == 0) {
+			trim();
+		}
+	}
+
+	/**
+	 * Deletes the oldest segments of this run that are no longer written and
+	 * hold no package still held. Only a prefix is deleted, since a later
+	 * segment may hold the HANDOFF record of a package accepted in an earlier
+	 * one.
+	 */
+	private void trim() {
+		while (oldest < log.currentSegment() && live[oldest] == 0) {
+			log.delete(oldest);
+			++oldest;
+		}
+	}
+
+	private static byte[] writeListener(
+			RemoteEventListener<TrackPackage> listener) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(listener);
+		out.close();
+		if (bytes.size() > 0xFFFF - 4) {
+			throw new IOException("Listener reference too large to journal");
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Restores a journalled listener reference, or returns null if it cannot
+	 * be restored.
+	 */
+	@SuppressWarnings("unchecked")
+	private static RemoteEventListener<TrackPackage> readListener(byte[] ref) {
+		try {
+			ObjectInputStream in = new ObjectInputStream(
+					new ByteArrayInputStream(ref));
+			try {
+				return (RemoteEventListener<TrackPackage>) in.readObject();
+			} finally {
+				in.close();
+			}
+		} catch (IOException exc) {
+			return null;
+		} catch (ClassNotFoundException exc) {
+			return null;
+		} catch (ClassCastException exc) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,140 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author Ganesh Chandrasekaran
+ * @version 10-17-2026
+ */
+
+/**
+ * Class OfficeMetrics holds the counters and latency histograms of one
+ * GPSOffice node. Recording is lock-free and allocates nothing, so the
+ * metrics are always on.
+ */
+public class OfficeMetrics {
+
+	/**
+	 * Enum Stage names the timed stages of the way of a package through a
+	 * node.
+	 */
+	public static enum Stage {
+		/** From arrival until the examination is over and forwarding starts. */
+		INSPECTION,
+		/** From a timer firing until its forwarding lane runs the task. */
+		FORWARD_QUEUE,
+		/** One Registry Server lookup. */
+		REGISTRY_LOOKUP,
+		/** One remote routeBatch() call to a neighbor. */
+		ROUTE_BATCH,
+		/** One remote heldPackages() call to a neighbor. */
+		CUSTODY_POLL,
+		/** One remote event callback to a listener. */
+		LISTENER_CALLBACK,
+		/** One remote heartbeat() call to a neighbor. */
+		HEARTBEAT,
+		/** From journalling accepted packages until they are on disk. */
+		JOURNAL_SYNC,
+		/** From arrival until the package is delivered or handed off. */
+		HOP
+	}
+
+	/**
+	 * Enum Counter names the event counts of a node.
+	 */
+	public static enum Counter {
+		ACCEPTED, DELIVERED, FORWARDED, LOST, BATCHES_SENT,
+		DEST_DISTANCE_CALLS, REGISTRY_EVENTS, EVENTS_REPORTED, EVENTS_DROPPED,
+		HOP_CACHE_HITS, HOP_CACHE_MISSES, SOURCE_ROUTED, SOURCE_ROUTE_FALLBACKS,
+		NEIGHBOR_FAILURES, FAILOVERS, HEDGES,
+		RECOVERED, REFUSED, DIVERTED
+	}
+
+	private static final Stage[] STAGES = Stage.values();
+	private static final Counter[] COUNTERS = Counter.values();
+
+	private final LatencyHistogram[] histograms = new LatencyHistogram[STAGES.length];
+	private final LongAdder[] counters = new LongAdder[COUNTERS.length];
+
+	/**
+	 * Create a new, empty set of metrics.
+	 */
+	public OfficeMetrics() {
+		for (int i = 0; i < histograms.length; ++i) {
+			histograms[i] = new LatencyHistogram();
+		}
+		for (int i = 0; i < counters.length; ++i) {
+			counters[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Records the time a stage took, given its start.
+	 *
+	 * @param stage
+	 *            Stage
+	 * @param startNanos
+	 *            Start time from System.nanoTime()
+	 */
+	public void recordSince(Stage stage, long startNanos) {
+		histograms[stage.ordinal()].recordSince(startNanos);
+	}
+
+	/**
+	 * Records the time a stage took.
+	 *
+	 * @param stage
+	 *            Stage
+	 * @param nanos
+	 *            Duration in nanoseconds
+	 */
+	public void record(Stage stage, long nanos) {
+		histograms[stage.ordinal()].record(nanos);
+	}
+
+	/**
+	 * Adds one to a counter.
+	 *
+	 * @param counter
+	 *            Counter
+	 */
+	public void increment(Counter counter) {
+		counters[counter.ordinal()].increment();
+	}
+
+	/**
+	 * Adds to a counter.
+	 *
+	 * @param counter
+	 *            Counter
+	 * @param n
+	 *            long
+	 */
+	public void add(Counter counter, long n) {
+		counters[counter.ordinal()].add(n);
+	}
+
+	/**
+	 * Call this method to take a copy of the metrics
+	 *
+	 * @param office
+	 *            Name of the office
+	 * @param gauges
+	 *            Current queue depths and other levels of the office
+	 *
+	 * @return Snapshot of the metrics
+	 */
+	public OfficeStats snapshot(String office, Map<String, Long> gauges) {
+		LinkedHashMap<String, Long> counts = new LinkedHashMap<String, Long>();
+		for (Counter counter : COUNTERS) {
+			counts.put(counter.toString(), counters[counter.ordinal()].sum());
+		}
+		LinkedHashMap<String, LatencyHistogram.Snapshot> latencies = new LinkedHashMap<String, LatencyHistogram.Snapshot>();
+		for (Stage stage : STAGES) {
+			latencies.put(stage.toString(), histograms[stage.ordinal()]
+					.snapshot());
+		}
+		return new OfficeStats(office, System.currentTimeMillis(), counts,
+				gauges, latencies);
+	}
+}
@@ -0,0 +1,66 @@
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * @author Ganesh Chandrasekaran
+ * @version 10-17-2026
+ */
+
+/**
+ * Class OfficeStats is a snapshot of the metrics of one GPSOffice node, as
+ * returned by GPSOfficeRef.getStats(). Counters and latencies are totals since
+ * the node started; gauges are levels at the time of the snapshot.
+ */
+public class OfficeStats implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	public final String office;
+	public final long time;
+	public final Map<String, Long> counters;
+	public final Map<String, Long> gauges;
+	public final Map<String, LatencyHistogram.Snapshot> latencies;
+
+	/**
+	 * Create a new office stats snapshot.
+	 *
+	 * @param office
+	 *            Name of the office
+	 * @param time
+	 *            Time of the snapshot in milliseconds since the Unix epoch
+	 * @param counters
+	 *            Counter values by name
+	 * @param gauges
+	 *            Gauge values by name
+	 * @param latencies
+	 *            Latency histograms by stage name
+	 */
+	public OfficeStats(String office, long time, Map<String, Long> counters,
+			Map<String, Long> gauges,
+			Map<String, LatencyHistogram.Snapshot> latencies) {
+		this.office = office;
+		this.time = time;
+		this.counters = Collections.unmodifiableMap(counters);
+		this.gauges = Collections.unmodifiableMap(gauges);
+		this.latencies = Collections.unmodifiableMap(latencies);
+	}
+
+	public String toString() {
+		StringBuilder b = new StringBuilder();
+		b.append(office).append(" office at ").append(time).append('\n');
+		for (Map.Entry<String, Long> e : counters.entrySet()) {
+			b.append("  ").append(e.getKey()).append(" = ")
+					.append(e.getValue()).append('\n');
+		}
+		for (Map.Entry<String, Long> e : gauges.entrySet()) {
+			b.append("  ").append(e.getKey()).append(" = ")
+					.append(e.getValue()).append('\n');
+		}
+		for (Map.Entry<String, LatencyHistogram.Snapshot> e : latencies
+				.entrySet()) {
+			b.append("  ").append(e.getKey()).append(": ")
+					.append(e.getValue()).append('\n');
+		}
+		return b.toString();
+	}
+}
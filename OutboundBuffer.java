@@ -0,0 +1,214 @@
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Ganesh Chandrasekaran
+ * @version 10-17-2026
+ */
+
+/**
+ * Class OutboundBuffer collects the parcels a GPSOffice node has decided to
+ * forward to one neighbor, so that they travel in a single routeBatch() call.
+ * The buffer is flushed when it holds <TT>gps.batchSize</TT> parcels (default
+ * 64) or <TT>gps.batchLingerMillis</TT> milliseconds (default 5) after the
+ * first parcel was added, whichever comes first; an express parcel is flushed
+ * right away. Parcels leave the buffer by service class, express first, and
+ * in the order they were added within a class.
+ * <P>
+ * The buffer also tracks the neighbor's credits, the number of parcels the
+ * neighbor last said it is ready to take. A flush takes no more parcels than
+ * that; once the neighbor has no credits left, a flush sends a single parcel
+ * as a probe at most every <TT>gps.creditRetryMillis</TT> milliseconds
+ * (default 50), and the other parcels wait in the buffer.
+ */
+public class OutboundBuffer {
+	public static final int BATCH_SIZE = Math.max(1,
+			Integer.getInteger("gps.batchSize", 64));
+	public static final long LINGER_MILLIS = Math.max(0,
+			Long.getLong("gps.batchLingerMillis", 5));
+
+	public static final long CREDIT_RETRY_MILLIS = Math.max(1,
+			Long.getLong("gps.creditRetryMillis", 50));
+
+	public static final int QUEUED = 0;
+	public static final int FIRST = 1;
+	public static final int FULL = 2;
+
+	private final String neighborName;
+	private GPSOfficeRef neighbor;
+	private ArrayList<Parcel> parcels = new ArrayList<Parcel>();
+	private final int[] counts = new int[ServiceClass.values().length];
+	private int credits = Integer.MAX_VALUE;
+	private long probeNanos;
+	private boolean retryScheduled;
+
+	/**
+	 * Create a new outbound buffer for the given neighbor.
+	 *
+	 * @param neighborName
+	 *            String
+	 * @param neighbor
+	 *            GPSOfficeRef
+	 */
+	public OutboundBuffer(String neighborName, GPSOfficeRef neighbor) {
+		this.neighborName = neighborName;
+		this.neighbor = neighbor;
+	}
+
+	/**
+	 * Call this method to access the name of the neighbor
+	 *
+	 * @return Neighbor name
+	 */
+	public String neighborName() {
+		return neighborName;
+	}
+
+	/**
+	 * Call this method to access the remote reference used for the next flush
+	 *
+	 * @return Remote reference to the neighbor
+	 */
+	public synchronized GPSOfficeRef neighbor() {
+		return neighbor;
+	}
+
+	/**
+	 * Adds a parcel to the buffer.
+	 *
+	 * @param parcel
+	 *            Parcel
+	 * @param ref
+	 *            Current remote reference to the neighbor
+	 *
+	 * @return <TT>FULL</TT> if the buffer reached the batch size or the
+	 *         parcel is express and the buffer must be flushed now,
+	 *         <TT>FIRST</TT> if this is the first parcel and a timed flush
+	 *         must be scheduled, or <TT>QUEUED</TT> otherwise
+	 */
+	public synchronized int add(Parcel parcel, GPSOfficeRef ref) {
+		neighbor = ref;
+		insert(parcel);
+		if (parcels.size() >= BATCH_SIZE
+				|| parcel.service == ServiceClass.EXPRESS) {
+			return FULL;
+		}
+		return parcels.size() == 1 ? FIRST : QUEUED;
+	}
+
+	/**
+	 * Call this method to access the number of parcels waiting in the buffer
+	 *
+	 * @return Number of parcels
+	 */
+	public synchronized int size() {
+		return parcels.size();
+	}
+
+	/**
+	 * Removes and returns the parcels to send now: as many as the neighbor has
+	 * credits for, or a single probe if it has none and the last probe is old
+	 * enough.
+	 *
+	 * @return Parcels to send, possibly none
+	 */
+	public synchronized Parcel[] drain() {
+		int n = parcels.size();
+		if (credits == 0) {
+			long now = System.nanoTime();
+			if (n == 0 || now - probeNanos < TimeUnit.MILLISECONDS
+					.toNanos(CREDIT_RETRY_MILLIS)) {
+				return new Parcel[0];
+			}
+			probeNanos = now;
+			n = 1;
+		} else {
+			n = Math.min(n, credits);
+			if (credits != Integer.MAX_VALUE) {
+				credits -= n;
+			}
+		}
+		Parcel[] batch = parcels.subList(0, n).toArray(new Parcel[n]);
+		parcels.subList(0, n).clear();
+		for (Parcel parcel : batch) {
+			--counts[parcel.service.ordinal()];
+		}
+		return batch;
+	}
+
+	/**
+	 * Puts parcels the neighbor refused back at the front of the buffer, and
+	 * records the neighbor's credits.
+	 *
+	 * @param refused
+	 *            Parcels to send again
+	 * @param credits
+	 *            Number of parcels the neighbor is ready to take
+	 */
+	public synchronized void refused(Parcel[] refused, int credits) {
+		for (int i = refused.length - 1; i >= 0; --i) {
+			insertFirst(refused[i]);
+		}
+		credited(credits);
+	}
+
+	/**
+	 * Records the neighbor's credits.
+	 *
+	 * @param credits
+	 *            Number of parcels the neighbor is ready to take
+	 */
+	public synchronized void credited(int credits) {
+		this.credits = Math.max(0, credits);
+		if (this.credits == 0) {
+			probeNanos = System.nanoTime();
+		}
+	}
+
+	/**
+	 * Call this method before scheduling a flush for parcels left in the
+	 * buffer, so that only one such flush is pending at a time
+	 *
+	 * @return True if the caller is to schedule the flush
+	 */
+	public synchronized boolean scheduleRetry() {
+		if (retryScheduled || parcels.isEmpty()) {
+			return false;
+		}
+		retryScheduled = true;
+		return true;
+	}
+
+	/**
+	 * Call this method when the flush scheduled after scheduleRetry() runs.
+	 */
+	public synchronized void retried() {
+		retryScheduled = false;
+	}
+
+	/**
+	 * Adds a parcel after the others of its class.
+	 */
+	private void insert(Parcel parcel) {
+		int c = parcel.service.ordinal();
+		int at = 0;
+		for (int i = 0; i <= c; ++i) {
+			at += counts[i];
+		}
+		parcels.add(at, parcel);
+		++counts[c];
+	}
+
+	/**
+	 * Adds a parcel before the others of its class.
+	 */
+	private void insertFirst(Parcel parcel) {
+		int c = parcel.service.ordinal();
+		int at = 0;
+		for (int i = 0; i < c; ++i) {
+			at += counts[i];
+		}
+		parcels.add(at, parcel);
+		++counts[c];
+	}
+}
@@ -0,0 +1,119 @@
+/**
+ * @author Ganesh Chandrasekaran
+ * @version 10-17-2026
+ */
+
+/**
+ * Interface PackageQuery specifies the queries Headquarters answers about the
+ * packages it has heard of.
+ */
+public interface PackageQuery {
+
+	/**
+	 * Class Status is a snapshot of the last known state of one package.
+	 */
+	public static class Status {
+		public final long packageID;
+		public final TrackPackage.Kind kind;
+		public final String office;
+		public final double destX;
+		public final double destY;
+		public final int hops;
+		public final long updated;
+
+		/**
+		 * Create a new package status.
+		 *
+		 * @param packageID
+		 *            long
+		 * @param kind
+		 *            Kind of the last event
+		 * @param office
+		 *            Office of the last event
+		 * @param destX
+		 *            double
+		 * @param destY
+		 *            double
+		 * @param hops
+		 *            Number of offices the package arrived at
+		 * @param updated
+		 *            Timestamp of the last event
+		 */
+		public Status(long packageID, TrackPackage.Kind kind, String office,
+				double destX, double destY, int hops, long updated) {
+			this.packageID = packageID;
+			this.kind = kind;
+			this.office = office;
+			this.destX = destX;
+			this.destY = destY;
+			this.hops = hops;
+			this.updated = updated;
+		}
+
+		public String toString() {
+			return new TrackPackage(packageID, kind, office, destX, destY)
+					.message() + " (" + hops + " hops)";
+		}
+	}
+
+	/**
+	 * Call this method to find out where a package is
+	 *
+	 * @param packageID
+	 *            long
+	 *
+	 * @return Last known state of the package, or null if it is unknown
+	 */
+	public Status locate(long packageID);
+
+	/**
+	 * Call this method to count the packages in flight at an office, that is,
+	 * whose last event came from that office and was neither a delivery nor a
+	 * loss
+	 *
+	 * @param office
+	 *            String
+	 *
+	 * @return Number of packages
+	 */
+	public int countAt(String office);
+
+	/**
+	 * Call this method to list the packages in flight at an office
+	 *
+	 * @param office
+	 *            String
+	 *
+	 * @return Tracking numbers of the packages
+	 */
+	public long[] packagesAt(String office);
+
+	/**
+	 * Call this method to count the packages whose last event is of the given
+	 * kind
+	 *
+	 * @param kind
+	 *            TrackPackage.Kind
+	 *
+	 * @return Number of packages
+	 */
+	public int count(TrackPackage.Kind kind);
+
+	/**
+	 * Call this method to list the packages whose last event is of the given
+	 * kind
+	 *
+	 * @param kind
+	 *            TrackPackage.Kind
+	 *
+	 * @return Tracking numbers of the packages
+	 */
+	public long[] packagesWith(TrackPackage.Kind kind);
+
+	/**
+	 * Call this method to count every package heard of
+	 *
+	 * @return Number of packages
+	 */
+	public int size();
+}
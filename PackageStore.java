@@ -0,0 +1,375 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * @author Ganesh Chandrasekaran
+ * @version 10-17-2026
+ */
+
+/**
+ * Class PackageStore keeps the live state of every package Headquarters has
+ * heard of. The state is held in parallel primitive arrays indexed by a slot
+ * number, with a primitive long-keyed map from tracking number to slot, so
+ * applying an event allocates nothing once the arrays have grown.
+ * <P>
+ * Two secondary indexes are kept as intrusive doubly-linked lists through the
+ * slots: one list per office of the packages in flight there, and one list
+ * per event kind.
+ * <P>
+ * Events from different offices may reach Headquarters out of order, since
+ * each office reports through its own queue. A delivery or loss is final.
+ * Otherwise an event is applied only if it is newer than the stored one, by
+ * event timestamp; of two events in the same millisecond, a departure is
+ * older than an arrival at another office and newer than an arrival at its
+ * own. Events that are not applied count for nothing, hops included. The
+ * ordering assumes the offices' clocks agree to within the time a package
+ * takes between two offices.
+ */
+public class PackageStore implements PackageQuery {
+	private static final int NONE = -1;
+	private static final TrackPackage.Kind[] KINDS = TrackPackage.Kind
+			.values();
+
+	private final LongIntHashMap slots = new LongIntHashMap(NONE);
+	private final int maxFinal;
+	private int size;
+	// Slots ever used, and the chain of freed ones through kindNext.
+	private int top;
+	private int free = NONE;
+
+	private long[] ids;
+	private byte[] kinds;
+	// Office whose in-flight list holds the slot, or NONE.
+	private int[] offices;
+	// Office of the last applied event, kept after the package is final.
+	private int[] lastOffices;
+	private double[] destXs;
+	private double[] destYs;
+	private int[] hops;
+	private long[] updated;
+
+	private int[] officeNext;
+	private int[] officePrev;
+	private int[] kindNext;
+	private int[] kindPrev;
+
+	private final HashMap<String, Integer> officeIds = new HashMap<String, Integer>();
+	private final ArrayList<String> officeNames = new ArrayList<String>();
+	private int[] officeHead = new int[16];
+	private int[] officeCount = new int[16];
+
+	private final int[] kindHead = new int[KINDS.length];
+	private final int[] kindTail = new int[KINDS.length];
+	private final int[] kindCount = new int[KINDS.length];
+
+	/**
+	 * Create a new, empty package store keeping the configured number of
+	 * final packages.
+	 *
+	 * @exception IllegalArgumentException
+	 *                (unchecked exception) Thrown if
+	 *                <TT>gps.hqFinalPackages</TT> is not positive
+	 */
+	public PackageStore() {
+		this(Integer.getInteger("gps.hqFinalPackages", 1 << 20));
+	}
+
+	/**
+	 * Create a new, empty package store.
+	 *
+	 * @param maxFinal
+	 *            Maximum number of delivered and lost packages kept
+	 *
+	 * @exception IllegalArgumentException
+	 *                (unchecked exception) Thrown if <TT>maxFinal</TT> is not
+	 *                positive
+	 */
+	public PackageStore(int maxFinal) {
+		if (maxFinal <= 0) {
+			throw new IllegalArgumentException("PackageStore(): maxFinal = "
+					+ maxFinal + " illegal");
+		}
+		this.maxFinal = maxFinal;
+		grow(1024);
+		Arrays.fill(officeHead, NONE);
+		Arrays.fill(kindHead, NONE);
+		Arrays.fill(kindTail, NONE);
+	}
+
+	/**
+	 * Applies a tracking event to the store.
+	 *
+	 * @param event
+	 *            TrackPackage
+	 */
+	public void apply(TrackPackage event) {
+		apply(event.packageID(), event.kind(), event.office(), event.destX(),
+				event.destY(), event.timestamp());
+	}
+
+	/**
+	 * Applies a tracking event, given as its fields, to the store.
+	 *
+	 * @param packageID
+	 *            long
+	 * @param kind
+	 *            TrackPackage.Kind
+	 * @param office
+	 *            String
+	 * @param destX
+	 *            double
+	 * @param destY
+	 *            double
+	 * @param timestamp
+	 *            long
+	 */
+	public synchronized void apply(long packageID, TrackPackage.Kind kind,
+			String office, double destX, double destY, long timestamp) {
+		int officeId = officeId(office);
+		int slot = slots.get(packageID);
+		if (slot == NONE) {
+			slot = allocate();
+			slots.put(packageID, slot);
+			ids[slot] = packageID;
+			kinds[slot] = NONE;
+			offices[slot] = NONE;
+			hops[slot] = 0;
+		} else if (!supersedes(slot, kind, officeId, timestamp)) {
+			return;
+		}
+
+		if (offices[slot] != NONE) {
+			unlinkOffice(slot);
+		}
+		if (kinds[slot] != NONE) {
+			unlinkKind(slot);
+		}
+
+		kinds[slot] = (byte) kind.ordinal();
+		destXs[slot] = destX;
+		destYs[slot] = destY;
+		updated[slot] = timestamp;
+		if (kind == TrackPackage.Kind.ARRIVED) {
+			++hops[slot];
+		}
+		linkKind(slot);
+		if (kind.isFinal()) {
+			offices[slot] = NONE;
+		} else {
+			offices[slot] = officeId;
+			linkOffice(slot);
+		}
+		lastOffices[slot] = officeId;
+		if (kind.isFinal()) {
+			evictFinal();
+		}
+	}
+
+	public synchronized Status locate(long packageID) {
+		int slot = slots.get(packageID);
+		if (slot == NONE || kinds[slot] == NONE) {
+			return null;
+		}
+		return new Status(packageID, KINDS[kinds[slot]],
+				officeNames.get(lastOffices[slot]), destXs[slot],
+				destYs[slot], hops[slot], updated[slot]);
+	}
+
+	public synchronized int countAt(String office) {
+		Integer officeId = officeIds.get(office);
+		return officeId == null ? 0 : officeCount[officeId];
+	}
+
+	public synchronized long[] packagesAt(String office) {
+		Integer officeId = officeIds.get(office);
+		if (officeId == null) {
+			return new long[0];
+		}
+		long[] result = new long[officeCount[officeId]];
+		int n = 0;
+		for (int slot = officeHead[officeId]; slot != NONE; slot = officeNext[slot]) {
+			result[n++] = ids[slot];
+		}
+		return result;
+	}
+
+	public synchronized int count(TrackPackage.Kind kind) {
+		return kindCount[kind.ordinal()];
+	}
+
+	public synchronized long[] packagesWith(TrackPackage.Kind kind) {
+		long[] result = new long[kindCount[kind.ordinal()]];
+		int n = 0;
+		for (int slot = kindHead[kind.ordinal()]; slot != NONE; slot = kindNext[slot]) {
+			result[n++] = ids[slot];
+		}
+		return result;
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Decides whether an event is newer than the current state of a slot.
+	 */
+	private boolean supersedes(int slot, TrackPackage.Kind kind, int officeId,
+			long timestamp) {
+		if (kinds[slot] == NONE) {
+			return true;
+		}
+		TrackPackage.Kind current = KINDS[kinds[slot]];
+		if (current.isFinal()) {
+			return false;
+		}
+		if (kind.isFinal() || timestamp > updated[slot]) {
+			return true;
+		}
+		if (timestamp < updated[slot]) {
+			return false;
+		}
+		// Same millisecond: a departure follows the arrival at its own office;
+		// any other event from another office is the package moving on, and
+		// one from the same office is a repeat.
+		boolean sameOffice = lastOffices[slot] == officeId;
+		if (kind == TrackPackage.Kind.DEPARTED
+				&& current == TrackPackage.Kind.ARRIVED) {
+			return sameOffice;
+		}
+		return !sameOffice;
+	}
+
+	/**
+	 * Takes a free slot, growing the arrays if there is none.
+	 */
+	private int allocate() {
+		++size;
+		if (free != NONE) {
+			int slot = free;
+			free = kindNext[slot];
+			return slot;
+		}
+		if (top == ids.length) {
+			grow(top * 2);
+		}
+		return top++;
+	}
+
+	/**
+	 * Forgets the packages that became final first while more than maxFinal
+	 * are kept.
+	 */
+	private void evictFinal() {
+		int delivered = TrackPackage.Kind.DELIVERED.ordinal();
+		int lost = TrackPackage.Kind.LOST.ordinal();
+		while (kindCount[delivered] + kindCount[lost] > maxFinal) {
+			int slot = kindTail[delivered];
+			int oldestLost = kindTail[lost];
+			if (slot == NONE
+					|| (oldestLost != NONE && updated[oldestLost] < updated[slot])) {
+				slot = oldestLost;
+			}
+			unlinkKind(slot);
+			slots.remove(ids[slot]);
+			kindNext[slot] = free;
+			free = slot;
+			--size;
+		}
+	}
+
+	private int officeId(String office) {
+		Integer officeId = officeIds.get(office);
+		if (officeId == null) {
+			officeId = officeNames.size();
+			officeIds.put(office, officeId);
+			officeNames.add(office);
+			if (officeId == officeHead.length) {
+				int oldLength = officeHead.length;
+				officeHead = Arrays.copyOf(officeHead, oldLength * 2);
+				officeCount = Arrays.copyOf(officeCount, oldLength * 2);
+				Arrays.fill(officeHead, oldLength, officeHead.length, NONE);
+			}
+		}
+		return officeId;
+	}
+
+	private void linkOffice(int slot) {
+		int officeId = offices[slot];
+		officePrev[slot] = NONE;
+		officeNext[slot] = officeHead[officeId];
+		if (officeHead[officeId] != NONE) {
+			officePrev[officeHead[officeId]] = slot;
+		}
+		officeHead[officeId] = slot;
+		++officeCount[officeId];
+	}
+
+	private void unlinkOffice(int slot) {
+		int officeId = offices[slot];
+		if (officePrev[slot] != NONE) {
+			officeNext[officePrev[slot]] = officeNext[slot];
+		} else {
+			officeHead[officeId] = officeNext[slot];
+		}
+		if (officeNext[slot] != NONE) {
+			officePrev[officeNext[slot]] = officePrev[slot];
+		}
+		--officeCount[officeId];
+		offices[slot] = NONE;
+	}
+
+	private void linkKind(int slot) {
+		int kind = kinds[slot];
+		kindPrev[slot] = NONE;
+		kindNext[slot] = kindHead[kind];
+		if (kindHead[kind] != NONE) {
+			kindPrev[kindHead[kind]] = slot;
+		} else {
+			kindTail[kind] = slot;
+		}
+		kindHead[kind] = slot;
+		++kindCount[kind];
+	}
+
+	private void unlinkKind(int slot) {
+		int kind = kinds[slot];
+		if (kindPrev[slot] != NONE) {
+			kindNext[kindPrev[slot]] = kindNext[slot];
+		} else {
+			kindHead[kind] = kindNext[slot];
+		}
+		if (kindNext[slot] != NONE) {
+			kindPrev[kindNext[slot]] = kindPrev[slot];
+		} else {
+			kindTail[kind] = kindPrev[slot];
+		}
+		--kindCount[kind];
+	}
+
+	private void grow(int capacity) {
+		ids = ids == null ? new long[capacity] : Arrays.copyOf(ids, capacity);
+		kinds = kinds == null ? new byte[capacity] : Arrays.copyOf(kinds,
+				capacity);
+		offices = offices == null ? new int[capacity] : Arrays.copyOf(
+				offices, capacity);
+		lastOffices = lastOffices == null ? new int[capacity] : Arrays
+				.copyOf(lastOffices, capacity);
+		destXs = destXs == null ? new double[capacity] : Arrays.copyOf(
+				destXs, capacity);
+		destYs = destYs == null ? new double[capacity] : Arrays.copyOf(
+				destYs, capacity);
+		hops = hops == null ? new int[capacity] : Arrays
+				.copyOf(hops, capacity);
+		updated = updated == null ? new long[capacity] : Arrays.copyOf(
+				updated, capacity);
+		officeNext = officeNext == null ? new int[capacity] : Arrays.copyOf(
+				officeNext, capacity);
+		officePrev = officePrev == null ? new int[capacity] : Arrays.copyOf(
+				officePrev, capacity);
+		kindNext = kindNext == null ? new int[capacity] : Arrays.copyOf(
+				kindNext, capacity);
+		kindPrev = kindPrev == null ? new int[capacity] : Arrays.copyOf(
+				kindPrev, capacity);
+	}
+}
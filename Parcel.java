@@ -0,0 +1,143 @@
+import java.io.Serializable;
+import java.util.HashSet;
+import edu.rit.ds.RemoteEventListener;
+
+/**
+ * @author Ganesh Chandrasekaran
+ * @version 10-17-2026
+ */
+
+/**
+ * Class Parcel encapsulates a package travelling between GPSOffice nodes: its
+ * tracking number, its destination and the Customer's remote event listener.
+ * Parcels bound for the same neighbor are handed over together in one
+ * routeBatch() call.
+ * <P>
+ * A source-routed parcel also carries the offices it is to visit, as chosen
+ * by its originating office, and the position of the next of them.
+ * <P>
+ * Every parcel has a service class, STANDARD unless the Customer chose
+ * another.
+ */
+public class Parcel implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	public final long packageID;
+	public final double destX;
+	public final double destY;
+	public final RemoteEventListener<TrackPackage> listener;
+	public final ServiceClass service;
+	public final String[] route;
+	public final int hop;
+
+	// When the parcel arrived at the node holding it, for that node's
+	// metrics.
+	transient long arrivedNanos;
+
+	// Neighbors this node failed to hand the parcel to, for failover.
+	transient HashSet<String> tried;
+
+	// When a neighbor first refused the parcel for lack of credits.
+	transient long refusedNanos;
+
+	/**
+	 * Create a new parcel.
+	 *
+	 * @param packageID
+	 *            long
+	 * @param destX
+	 *            double
+	 * @param destY
+	 *            double
+	 * @param listener
+	 *            RemoteEventListener<TrackPackage>
+	 */
+	public Parcel(long packageID, double destX, double destY,
+			RemoteEventListener<TrackPackage> listener) {
+		this(packageID, destX, destY, listener, ServiceClass.STANDARD);
+	}
+
+	/**
+	 * Create a new parcel of the given service class.
+	 *
+	 * @param packageID
+	 *            long
+	 * @param destX
+	 *            double
+	 * @param destY
+	 *            double
+	 * @param listener
+	 *            RemoteEventListener<TrackPackage>
+	 * @param service
+	 *            ServiceClass
+	 */
+	public Parcel(long packageID, double destX, double destY,
+			RemoteEventListener<TrackPackage> listener, ServiceClass service) {
+		this(packageID, destX, destY, listener, service, null, 0);
+	}
+
+	/**
+	 * Create a new source-routed parcel.
+	 *
+	 * @param packageID
+	 *            long
+	 * @param destX
+	 *            double
+	 * @param destY
+	 *            double
+	 * @param listener
+	 *            RemoteEventListener<TrackPackage>
+	 * @param service
+	 *            ServiceClass
+	 * @param route
+	 *            Names of the offices to visit, or null to route greedily
+	 * @param hop
+	 *            Index in the route of the next office to visit
+	 */
+	public Parcel(long packageID, double destX, double destY,
+			RemoteEventListener<TrackPackage> listener, ServiceClass service,
+			String[] route, int hop) {
+		this.packageID = packageID;
+		this.destX = destX;
+		this.destY = destY;
+		this.listener = listener;
+		this.service = service;
+		this.route = route;
+		this.hop = hop;
+	}
+
+	/**
+	 * Call this method to access the next office on the parcel's route
+	 *
+	 * @return Name of the next office, or null if the route ends here
+	 */
+	public String nextHop() {
+		return hop < route.length ? route[hop] : null;
+	}
+
+	/**
+	 * Returns this parcel as it is to be handed to the next office on its
+	 * route.
+	 *
+	 * @return Parcel
+	 */
+	public Parcel advance() {
+		Parcel next = new Parcel(packageID, destX, destY, listener, service,
+				route, hop + 1);
+		next.arrivedNanos = arrivedNanos;
+		return next;
+	}
+
+	/**
+	 * Returns this parcel without its route, to be routed greedily from here
+	 * on.
+	 *
+	 * @return Parcel
+	 */
+	public Parcel greedy() {
+		Parcel next = new Parcel(packageID, destX, destY, listener, service);
+		next.arrivedNanos = arrivedNanos;
+		next.tried = tried;
+		return next;
+	}
+}
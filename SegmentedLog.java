@@ -0,0 +1,380 @@
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * @author Ganesh Chandrasekaran
+ * @version 10-17-2026
+ */
+
+/**
+ * Class SegmentedLog is the append-only log of records under EventJournal and
+ * OfficeJournal. It is a directory of fixed-size segment files, numbered in
+ * order, each memory-mapped while it is written. A segment holds a sequence
+ * of records: <BR>
+ * <TT>short</TT> payload length, <TT>byte</TT> type, payload, <TT>int</TT>
+ * CRC-32 of the type and payload. <BR>
+ * A zero length, a short tail or a bad checksum ends the segment. What the
+ * types and payloads mean is up to the journal using the log.
+ * <P>
+ * Appends only write to the mapped segment. A background thread forces the
+ * segment to disk whenever there are new appends, committing every append
+ * made since the last force as one group; sync() waits for the group holding
+ * the caller's appends. The thread may pause between forces to gather larger
+ * groups. Every run starts a new segment, and only the segments of earlier
+ * runs are read back.
+ * <P>
+ * A record is appended by reserving room for it, then writing its payload
+ * between begin() and end(). Class SegmentedLog is multiple thread safe, but
+ * the appends of one record must not be interleaved with another's, so a
+ * journal appends with its own lock held.
+ */
+public class SegmentedLog {
+
+	/**
+	 * Interface Visitor receives the records read back from a segment.
+	 */
+	public static interface Visitor {
+
+		/**
+		 * Handles one record.
+		 *
+		 * @param type
+		 *            Record type
+		 * @param payload
+		 *            Buffer positioned at the payload
+		 * @param length
+		 *            Payload length
+		 *
+		 * @return True to go on reading the segment, false to end it here
+		 */
+		public boolean record(byte type, MappedByteBuffer payload, int length);
+	}
+
+	/**
+	 * Bytes of a record besides its payload.
+	 */
+	public static final int OVERHEAD = 3 + 4;
+
+	private static final int HEADER = 3;
+	private static final int TRAILER = 4;
+
+	private final File directory;
+	private final int segmentBytes;
+	private final long forceMillis;
+	private final int firstSegment;
+	private final CRC32 crc = new CRC32();
+
+	private int nextSegment;
+	private MappedByteBuffer segment;
+	private int recordStart;
+	private long written;
+	private long durable;
+	private boolean closed;
+	private final Thread forcer;
+
+	/**
+	 * Open the log in the given directory, creating the directory if needed.
+	 * Nothing is written until the first append.
+	 *
+	 * @param directory
+	 *            Log directory
+	 * @param segmentBytes
+	 *            Size of a segment, at least 1024 bytes
+	 * @param forceMillis
+	 *            Pause of the force thread between forces, or 0
+	 * @param forceThread
+	 *            Name of the force thread
+	 *
+	 * @exception IOException
+	 *                Thrown if the directory cannot be created.
+	 */
+	public SegmentedLog(File directory, int segmentBytes, long forceMillis,
+			String forceThread) throws IOException {
+		this.directory = directory;
+		this.segmentBytes = Math.max(1024, segmentBytes);
+		this.forceMillis = Math.max(0, forceMillis);
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot create journal directory "
+					+ directory);
+		}
+		File[] segments = segments();
+		nextSegment = segments.length == 0 ? 0
+				: segmentNumber(segments[segments.length - 1]) + 1;
+		firstSegment = nextSegment;
+
+		forcer = new Thread(new Runnable() {
+			public void run() {
+				forceLoop();
+			}
+		}, forceThread);
+		forcer.setDaemon(true);
+		forcer.start();
+	}
+
+	/**
+	 * Call this method to access the number of the first segment of this run
+	 *
+	 * @return Segment number; the segments of earlier runs are numbered
+	 *         below it
+	 */
+	public int firstSegment() {
+		return firstSegment;
+	}
+
+	/**
+	 * Call this method to access the number of the segment being written
+	 *
+	 * @return Segment number, or firstSegment() - 1 before the first append
+	 */
+	public synchronized int currentSegment() {
+		return nextSegment - 1;
+	}
+
+	/**
+	 * Call this method to list the segments of earlier runs
+	 *
+	 * @return Segment files, oldest first
+	 */
+	public File[] earlierSegments() {
+		File[] segments = segments();
+		int n = 0;
+		while (n < segments.length
+				&& segmentNumber(segments[n]) < firstSegment) {
+			++n;
+		}
+		return Arrays.copyOf(segments, n);
+	}
+
+	/**
+	 * Reads back the records of a segment, oldest first, until the segment
+	 * ends or the visitor stops.
+	 *
+	 * @param file
+	 *            Segment file
+	 * @param visitor
+	 *            Receiver of the records
+	 *
+	 * @exception IOException
+	 *                Thrown if the segment cannot be read.
+	 */
+	public static void read(File file, Visitor visitor) throws IOException {
+		CRC32 crc = new CRC32();
+		MappedByteBuffer buf = map(file, FileChannel.MapMode.READ_ONLY,
+				file.length());
+		while (buf.remaining() >= HEADER) {
+			int start = buf.position();
+			int length = buf.getShort() & 0xFFFF;
+			if (length == 0 || buf.remaining() < 1 + length + TRAILER) {
+				return;
+			}
+			byte type = buf.get();
+			int end = start + HEADER + length;
+			if (checksum(crc, buf, start + 2, end) != buf.getInt(end)) {
+				return;
+			}
+			buf.position(start + HEADER);
+			if (!visitor.record(type, buf, length)) {
+				return;
+			}
+			buf.position(end + TRAILER);
+		}
+	}
+
+	/**
+	 * Makes room in the current segment for records of the given total
+	 * payload size, starting a new segment if needed. The old segment is
+	 * forced first, so every append counted as written before the roll is
+	 * durable.
+	 *
+	 * @param payloads
+	 *            Total payload size of the records
+	 * @param records
+	 *            Number of records
+	 *
+	 * @return True if a new segment was started
+	 *
+	 * @exception IOException
+	 *                Thrown if the log is closed or a new segment cannot be
+	 *                created.
+	 */
+	public synchronized boolean reserve(int payloads, int records)
+			throws IOException {
+		if (closed) {
+			throw new IOException("Journal closed");
+		}
+		if (segment != null
+				&& segment.remaining() >= payloads + records * OVERHEAD) {
+			return false;
+		}
+		if (segment != null) {
+			segment.force();
+			durable = written;
+			notifyAll();
+		}
+		segment = map(segmentFile(nextSegment),
+				FileChannel.MapMode.READ_WRITE, segmentBytes);
+		++nextSegment;
+		return true;
+	}
+
+	/**
+	 * Starts a record in room made by reserve().
+	 *
+	 * @param type
+	 *            Record type
+	 * @param length
+	 *            Payload length, at most 65535
+	 *
+	 * @return Buffer to put the payload in
+	 */
+	public synchronized MappedByteBuffer begin(byte type, int length) {
+		recordStart = segment.position();
+		segment.putShort((short) length);
+		segment.put(type);
+		return segment;
+	}
+
+	/**
+	 * Ends the record started by begin(), appending its checksum, and wakes
+	 * the force thread if it was idle.
+	 */
+	public synchronized void end() {
+		int end = segment.position();
+		int value = checksum(crc, segment, recordStart + 2, end);
+		segment.position(end);
+		segment.putInt(value);
+		if (written == durable) {
+			notifyAll();
+		}
+		written += segment.position() - recordStart;
+	}
+
+	/**
+	 * Waits until every record appended so far is on disk.
+	 *
+	 * @exception InterruptedIOException
+	 *                Thrown if the calling thread is interrupted.
+	 */
+	public synchronized void sync() throws InterruptedIOException {
+		long target = written;
+		while (durable < target && !closed) {
+			try {
+				wait();
+			} catch (InterruptedException exc) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			}
+		}
+	}
+
+	/**
+	 * Forces the remaining appends to disk and stops the log.
+	 */
+	public void close() {
+		MappedByteBuffer last;
+		synchronized (this) {
+			closed = true;
+			last = segment;
+			notifyAll();
+		}
+		if (last != null) {
+			last.force();
+		}
+	}
+
+	/**
+	 * Deletes a segment.
+	 *
+	 * @param segmentNumber
+	 *            int
+	 */
+	public void delete(int segmentNumber) {
+		segmentFile(segmentNumber).delete();
+	}
+
+	/**
+	 * Forces groups of appends to disk until the log is closed.
+	 */
+	private void forceLoop() {
+		try {
+			while (true) {
+				MappedByteBuffer target;
+				long upTo;
+				synchronized (this) {
+					while (written == durable && !closed) {
+						wait();
+					}
+					if (closed) {
+						return;
+					}
+					target = segment;
+					upTo = written;
+				}
+				target.force();
+				synchronized (this) {
+					durable = Math.max(durable, upTo);
+					notifyAll();
+				}
+				if (forceMillis > 0) {
+					Thread.sleep(forceMillis);
+				}
+			}
+		} catch (InterruptedException exc) {
+		}
+	}
+
+	/**
+	 * Computes the CRC-32 of a range of a buffer in place. Leaves the
+	 * buffer's limit at its capacity.
+	 */
+	private static int checksum(CRC32 crc, MappedByteBuffer buf, int from,
+			int to) {
+		buf.limit(to);
+		buf.position(from);
+		crc.reset();
+		crc.update(buf);
+		buf.limit(buf.capacity());
+		return (int) crc.getValue();
+	}
+
+	private File segmentFile(int segmentNumber) {
+		return new File(directory, String.format("segment-%08d.journal",
+				segmentNumber));
+	}
+
+	private File[] segments() {
+		File[] segments = directory.listFiles(new FilenameFilter() {
+			public boolean accept(File dir, String name) {
+				return name.matches("segment-\\d{8}\\.journal");
+			}
+		});
+		if (segments == null) {
+			segments = new File[0];
+		}
+		Arrays.sort(segments);
+		return segments;
+	}
+
+	private static int segmentNumber(File segment) {
+		String name = segment.getName();
+		return Integer.parseInt(name.substring(8, 16));
+	}
+
+	private static MappedByteBuffer map(File file, FileChannel.MapMode mode,
+			long size) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file,
+				mode == FileChannel.MapMode.READ_ONLY ? "r" : "rw");
+		try {
+			return raf.getChannel().map(mode, 0, size);
+		} finally {
+			raf.close();
+		}
+	}
+}
@@ -0,0 +1,14 @@
+/**
+ * @author Ganesh Chandrasekaran
+ * @version 10-17-2026
+ */
+
+/**
+ * Enum ServiceClass is the class of service a package is sent with. GPSOffice
+ * nodes examine and forward the packages of each class in their own queues,
+ * sharing time between the classes by weight (see ForwardingEngine), and hand
+ * express packages over without waiting for a batch to fill.
+ */
+public enum ServiceClass {
+	EXPRESS, STANDARD, BULK
+}
@@ -1,4 +1,10 @@
 import edu.rit.ds.RemoteEvent;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * @author Ganesh Chandrasekaran
@@ -9,25 +15,239 @@ import edu.rit.ds.RemoteEvent;
  * Class TrackPackage encapsulates a remote event generated by a GPSOffice in
  * the GPSOffice system. The TrackPackage events are used to report status of
  * the packages to the Customer and Headquarters programs
+ * <P>
+ * An event carries only structured fields and travels in a compact binary
+ * form; the human-readable message is rendered by message() when a consumer
+ * asks for it.
+ * <P>
+ * Several events for the same listener may be coalesced into one remote
+ * callback: the reported event then carries the events that followed it, and
+ * a consumer must handle every element of events(), in order.
  */
-public class TrackPackage extends RemoteEvent {
-	public final long packageID;
-	public final String message;
-	public final int status;
+public class TrackPackage extends RemoteEvent implements Externalizable {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Enum Kind specifies what happened to the package.
+	 */
+	public static enum Kind {
+		ARRIVED, DEPARTED, DELIVERED, LOST;
+
+		private static final Kind[] VALUES = values();
+
+		/**
+		 * Call this method to check whether the package's journey is over
+		 *
+		 * @return True for DELIVERED and LOST
+		 */
+		public boolean isFinal() {
+			return this == DELIVERED || this == LOST;
+		}
+	}
+
+	private long packageID;
+	private Kind kind;
+	private String office;
+	private double destX;
+	private double destY;
+	private long timestamp;
+	private TrackPackage[] following = NONE;
+
+	private static final TrackPackage[] NONE = new TrackPackage[0];
+
+	/**
+	 * Construct an empty TrackPackage event. Used by deserialization only.
+	 */
+	public TrackPackage() {
+	}
 
 	/**
 	 * Create a new TrackPackage event.
-	 * 
-	 * @param notification
-	 *            String
-	 * @param packetNumber
+	 *
+	 * @param packageID
 	 *            long
-	 * @param s
-	 *            int
+	 * @param kind
+	 *            Kind
+	 * @param office
+	 *            Name of the GPSOffice reporting the event
+	 * @param destX
+	 *            double
+	 * @param destY
+	 *            double
+	 */
+	public TrackPackage(long packageID, Kind kind, String office,
+			double destX, double destY) {
+		this.packageID = packageID;
+		this.kind = kind;
+		this.office = office;
+		this.destX = destX;
+		this.destY = destY;
+		this.timestamp = System.currentTimeMillis();
+	}
+
+	/**
+	 * Call this method to access the tracking number of the event
+	 *
+	 * @return Tracking number of the package
+	 */
+	public long packageID() {
+		return packageID;
+	}
+
+	/**
+	 * Call this method to access the kind of the event
+	 *
+	 * @return What happened to the package
+	 */
+	public Kind kind() {
+		return kind;
+	}
+
+	/**
+	 * Call this method to access the office name of the event
+	 *
+	 * @return Name of the GPSOffice reporting the event
+	 */
+	public String office() {
+		return office;
+	}
+
+	/**
+	 * Call this method to access the destination X-coordinate of the event
+	 *
+	 * @return X-coordinate of the package's destination
+	 */
+	public double destX() {
+		return destX;
+	}
+
+	/**
+	 * Call this method to access the destination Y-coordinate of the event
+	 *
+	 * @return Y-coordinate of the package's destination
+	 */
+	public double destY() {
+		return destY;
+	}
+
+	/**
+	 * Call this method to access the time at which the event was generated
+	 *
+	 * @return Time in milliseconds since the Unix epoch
+	 */
+	public long timestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * Coalesces a run of events into one event to report in a single remote
+	 * callback.
+	 *
+	 * @param events
+	 *            Events in the order they happened (at least one)
+	 *
+	 * @return The first event, carrying the others
+	 */
+	public static TrackPackage coalesce(List<TrackPackage> events) {
+		TrackPackage first = events.get(0);
+		if (events.size() == 1) {
+			return first;
+		}
+		TrackPackage head = first.copy();
+		head.following = events.subList(1, events.size()).toArray(
+				new TrackPackage[events.size() - 1]);
+		return head;
+	}
+
+	/**
+	 * Call this method to access every event reported in this callback
+	 *
+	 * @return This event followed by any events coalesced into it
 	 */
-	public TrackPackage(String notification, long packetNumber, int s) {
-		this.packageID = packetNumber;
-		this.message = notification;
-		this.status = s;
+	public List<TrackPackage> events() {
+		List<TrackPackage> events = new ArrayList<TrackPackage>(
+				following.length + 1);
+		events.add(this);
+		for (TrackPackage event : following) {
+			events.add(event);
+		}
+		return events;
+	}
+
+	/**
+	 * Returns a copy of this event without any coalesced events.
+	 */
+	private TrackPackage copy() {
+		TrackPackage copy = new TrackPackage();
+		copy.packageID = packageID;
+		copy.kind = kind;
+		copy.office = office;
+		copy.destX = destX;
+		copy.destY = destY;
+		copy.timestamp = timestamp;
+		return copy;
+	}
+
+	/**
+	 * Call this method to render the event as the message printed by the
+	 * Customer and Headquarters programs
+	 *
+	 * @return Human-readable message
+	 */
+	public String message() {
+		switch (kind) {
+		case ARRIVED:
+			return "Package number " + packageID + " arrived at " + office
+					+ " office";
+		case DEPARTED:
+			return "Package number " + packageID + " departed from " + office
+					+ " office";
+		case DELIVERED:
+			return "Package number " + packageID + " delivered from " + office
+					+ " office to (" + destX + "," + destY + ")";
+		default:
+			return "Package number " + packageID + " lost by " + office
+					+ " office";
+		}
+	}
+
+	public String toString() {
+		return message();
+	}
+
+	public void writeExternal(ObjectOutput out) throws IOException {
+		writeFields(out);
+		out.writeInt(following.length);
+		for (TrackPackage event : following) {
+			event.writeFields(out);
+		}
+	}
+
+	public void readExternal(ObjectInput in) throws IOException {
+		readFields(in);
+		int count = in.readInt();
+		following = count == 0 ? NONE : new TrackPackage[count];
+		for (int i = 0; i < count; ++i) {
+			following[i] = new TrackPackage();
+			following[i].readFields(in);
+		}
+	}
+
+	private void writeFields(ObjectOutput out) throws IOException {
+		out.writeLong(packageID);
+		out.writeByte(kind.ordinal());
+		out.writeUTF(office);
+		out.writeDouble(destX);
+		out.writeDouble(destY);
+		out.writeLong(timestamp);
+	}
+
+	private void readFields(ObjectInput in) throws IOException {
+		packageID = in.readLong();
+		kind = Kind.VALUES[in.readByte()];
+		office = in.readUTF();
+		destX = in.readDouble();
+		destY = in.readDouble();
+		timestamp = in.readLong();
 	}
-}
\ No newline at end of file
+}
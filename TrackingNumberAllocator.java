@@ -0,0 +1,139 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author Ganesh Chandrasekaran
+ * @version 10-17-2026
+ */
+
+/**
+ * Class TrackingNumberAllocator hands out package tracking numbers that are
+ * unique across the GPS system without any coordination between offices. A
+ * tracking number packs three fields into a positive long:
+ * <P>
+ * bits 62-22 = milliseconds since 2013-01-01 00:00 UTC (about 69 years) <BR>
+ * bits 21-10 = office ID, 0 to 4095, unique among running offices <BR>
+ * bits 9-0 = sequence number within the millisecond
+ * <P>
+ * Numbers from one allocator strictly increase. When more than 1024 numbers
+ * are needed in one millisecond, the allocator borrows from the next
+ * millisecond, so allocation never blocks and never repeats.
+ */
+public class TrackingNumberAllocator {
+	public static final long EPOCH = 1356998400000L;
+	public static final int OFFICE_BITS = 12;
+	public static final int SEQUENCE_BITS = 10;
+	public static final int MAX_OFFICE_ID = (1 << OFFICE_BITS) - 1;
+
+	private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+	private volatile long officeField;
+
+	// Last tick handed out: (milliseconds since EPOCH) << SEQUENCE_BITS |
+	// sequence number.
+	private final AtomicLong lastTick = new AtomicLong();
+
+	/**
+	 * Create a new tracking number allocator.
+	 *
+	 * @param officeId
+	 *            Office ID, 0 to MAX_OFFICE_ID
+	 */
+	public TrackingNumberAllocator(int officeId) {
+		setOfficeId(officeId);
+	}
+
+	/**
+	 * Changes the office ID placed in subsequent tracking numbers.
+	 *
+	 * @param officeId
+	 *            Office ID, 0 to MAX_OFFICE_ID
+	 *
+	 * @exception IllegalArgumentException
+	 *                (unchecked exception) Thrown if the office ID is out of
+	 *                range
+	 */
+	public void setOfficeId(int officeId) {
+		if (officeId < 0 || officeId > MAX_OFFICE_ID) {
+			throw new IllegalArgumentException(
+					"TrackingNumberAllocator: officeId = " + officeId
+							+ " illegal");
+		}
+		officeField = ((long) officeId) << SEQUENCE_BITS;
+	}
+
+	/**
+	 * Allocates one tracking number.
+	 *
+	 * @return Tracking number
+	 */
+	public long next() {
+		return compose(reserve(1));
+	}
+
+	/**
+	 * Allocates a block of tracking numbers with a single atomic update.
+	 *
+	 * @param count
+	 *            Number of tracking numbers
+	 *
+	 * @return Tracking numbers, in increasing order
+	 */
+	public long[] allocate(int count) {
+		long[] numbers = new long[count];
+		if (count == 0) {
+			return numbers;
+		}
+		long tick = reserve(count);
+		for (int i = 0; i < count; ++i) {
+			numbers[i] = compose(tick + i);
+		}
+		return numbers;
+	}
+
+	/**
+	 * Extracts the time at which a tracking number was allocated.
+	 *
+	 * @param trackingNumber
+	 *            long
+	 *
+	 * @return Time in milliseconds since the Unix epoch
+	 */
+	public static long timestampOf(long trackingNumber) {
+		return (trackingNumber >>> (OFFICE_BITS + SEQUENCE_BITS)) + EPOCH;
+	}
+
+	/**
+	 * Extracts the ID of the office that allocated a tracking number.
+	 *
+	 * @param trackingNumber
+	 *            long
+	 *
+	 * @return Office ID
+	 */
+	public static int officeIdOf(long trackingNumber) {
+		return (int) ((trackingNumber >>> SEQUENCE_BITS) & MAX_OFFICE_ID);
+	}
+
+	/**
+	 * Reserves count consecutive ticks and returns the first.
+	 */
+	private long reserve(int count) {
+		while (true) {
+			long last = lastTick.get();
+			long now = (System.currentTimeMillis() - EPOCH) << SEQUENCE_BITS;
+			long first = Math.max(now, last + 1);
+			if (lastTick.compareAndSet(last, first + count - 1)) {
+				return first;
+			}
+		}
+	}
+
+	/**
+	 * Turns a tick into a tracking number.
+	 */
+	private long compose(long tick) {
+		long millis = tick >>> SEQUENCE_BITS;
+		return (millis << (OFFICE_BITS + SEQUENCE_BITS)) | officeField
+				| (tick & SEQUENCE_MASK);
+	}
+}
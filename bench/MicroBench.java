@@ -0,0 +1,230 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * @author Ganesh Chandrasekaran
+ * @version 10-17-2026
+ */
+
+/**
+ * Class MicroBench is a small microbenchmark harness for the hot paths of the
+ * GPSOffice system, run against in-process stubs. It follows the methodology
+ * of JMH: every benchmark runs in freshly forked JVMs, warms up before it is
+ * measured, feeds its results to a sink so the JIT compiler cannot discard
+ * the work, and is reported as the mean time per operation with a 99.9%
+ * confidence interval. Inputs come from fixed seeds, so runs are comparable.
+ * <P>
+ * Each benchmark is a subclass whose run() method performs the given number
+ * of operations and returns a value derived from their results.
+ * <P>
+ * Usage: java MicroBench [<I>pattern</I>] <BR>
+ * <I>pattern</I> = regular expression selecting benchmarks by name (default:
+ * all)
+ * <P>
+ * The harness is configured by system properties: <BR>
+ * <TT>bench.forks</TT> = JVMs per benchmark (default 2) <BR>
+ * <TT>bench.warmups</TT> = warmup iterations per fork (default 5) <BR>
+ * <TT>bench.iterations</TT> = measured iterations per fork (default 10) <BR>
+ * <TT>bench.iterationMillis</TT> = length of an iteration (default 500) <BR>
+ * <TT>bench.format</TT> = <TT>text</TT> (default) or <TT>csv</TT>
+ */
+public abstract class MicroBench {
+
+	/**
+	 * Every benchmark known to the harness.
+	 */
+	static MicroBench[] all() {
+		return new MicroBench[] { new RoutingBenchmarks.Distance(),
+				new RoutingBenchmarks.DestDistance(),
+				new RoutingBenchmarks.CalculateDistance(),
+				new RoutingBenchmarks.NextHop(),
+				new RoutingBenchmarks.NextHopCached(),
+				new RoutingBenchmarks.NearestNeighbors(),
+				new RoutingBenchmarks.NearestNeighborsLinear(),
+				new TrackPackageBenchmarks.Construct(),
+				new TrackPackageBenchmarks.Message(),
+				new TrackPackageBenchmarks.Encode(),
+				new TrackPackageBenchmarks.Serialize(),
+				new TrackPackageBenchmarks.SerializeCoalesced() };
+	}
+
+	/**
+	 * Results of the benchmarks end up here.
+	 */
+	static volatile long sink;
+
+	/**
+	 * Call this method to access the benchmark's name
+	 *
+	 * @return Name of the benchmark
+	 */
+	public String name() {
+		return getClass().getName().replace("Benchmarks$", ".");
+	}
+
+	/**
+	 * Prepares the benchmark's inputs. Called once per fork, before warmup.
+	 *
+	 * @exception Exception
+	 *                Thrown if the inputs cannot be prepared.
+	 */
+	public void setUp() throws Exception {
+	}
+
+	/**
+	 * Performs the given number of operations.
+	 *
+	 * @param ops
+	 *            Number of operations
+	 *
+	 * @return A value depending on every operation's result
+	 *
+	 * @exception Exception
+	 *                Thrown if an operation fails.
+	 */
+	public abstract long run(int ops) throws Exception;
+
+	/**
+	 * MicroBench main program.
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length == 2 && args[0].equals("-fork")) {
+			fork(args[1]);
+			return;
+		}
+		if (args.length > 1)
+			usage();
+		String pattern = args.length == 1 ? args[0] : ".*";
+		int forks = Integer.getInteger("bench.forks", 2);
+		boolean csv = System.getProperty("bench.format", "text")
+				.equalsIgnoreCase("csv");
+
+		if (csv) {
+			System.out.println("benchmark,ns_per_op,error_ns,samples");
+		}
+		for (MicroBench bench : all()) {
+			if (!bench.name().matches(pattern)) {
+				continue;
+			}
+			List<Double> samples = new ArrayList<Double>();
+			for (int f = 0; f < forks; ++f) {
+				samples.addAll(runFork(bench.name()));
+			}
+			double mean = 0;
+			for (double s : samples) {
+				mean += s;
+			}
+			mean /= samples.size();
+			double var = 0;
+			for (double s : samples) {
+				var += (s - mean) * (s - mean);
+			}
+			var /= Math.max(1, samples.size() - 1);
+			// Normal approximation of the 99.9% confidence interval.
+			double error = 3.291 * Math.sqrt(var / samples.size());
+			System.out.println(String.format(Locale.ROOT,
+					csv ? "%s,%.3f,%.3f,%d" : "%-40s %12.3f +- %9.3f ns/op  (%d)",
+					bench.name(), mean, error, samples.size()));
+		}
+	}
+
+	/**
+	 * Runs one benchmark in a forked JVM and collects its measured
+	 * iterations.
+	 */
+	private static List<Double> runFork(String name) throws Exception {
+		List<String> command = new ArrayList<String>();
+		command.add(System.getProperty("java.home") + File.separator + "bin"
+				+ File.separator + "java");
+		for (String prop : System.getProperties().stringPropertyNames()) {
+			if (prop.startsWith("bench.") || prop.startsWith("gps.")) {
+				command.add("-D" + prop + "=" + System.getProperty(prop));
+			}
+		}
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add("MicroBench");
+		command.add("-fork");
+		command.add(name);
+		ProcessBuilder builder = new ProcessBuilder(command);
+		builder.redirectErrorStream(true);
+		Process process = builder.start();
+		List<Double> samples = new ArrayList<Double>();
+		BufferedReader in = new BufferedReader(new InputStreamReader(
+				process.getInputStream()));
+		String line;
+		while ((line = in.readLine()) != null) {
+			if (line.startsWith("sample ")) {
+				samples.add(Double.parseDouble(line.substring(7)));
+			} else {
+				System.err.println(name + ": " + line);
+			}
+		}
+		if (process.waitFor() != 0 || samples.isEmpty()) {
+			throw new IllegalStateException("Benchmark " + name + " failed");
+		}
+		return samples;
+	}
+
+	/**
+	 * Runs one benchmark in this JVM, printing the time per operation of each
+	 * measured iteration.
+	 */
+	private static void fork(String name) throws Exception {
+		MicroBench bench = null;
+		for (MicroBench b : all()) {
+			if (b.name().equals(name)) {
+				bench = b;
+			}
+		}
+		if (bench == null) {
+			throw new IllegalArgumentException("No benchmark " + name);
+		}
+		int warmups = Integer.getInteger("bench.warmups", 5);
+		int iterations = Integer.getInteger("bench.iterations", 10);
+		long iterationNanos = Long.getLong("bench.iterationMillis", 500)
+				* 1000000L;
+
+		bench.setUp();
+		// Size an iteration so that it lasts about bench.iterationMillis. The
+		// first pass absorbs class loading and initialization.
+		int ops = 1;
+		long elapsed = 0;
+		for (int pass = 0; pass < 2; ++pass) {
+			ops = 1;
+			while ((elapsed = time(bench, ops)) < iterationNanos / 10
+					&& ops < (1 << 29)) {
+				ops *= 2;
+			}
+		}
+		ops = (int) Math.max(1,
+				Math.min(Integer.MAX_VALUE, ops * (double) iterationNanos
+						/ Math.max(1, elapsed)));
+		for (int i = 0; i < warmups; ++i) {
+			time(bench, ops);
+		}
+		for (int i = 0; i < iterations; ++i) {
+			System.out.println("sample " + (double) time(bench, ops) / ops);
+		}
+	}
+
+	private static long time(MicroBench bench, int ops) throws Exception {
+		long start = System.nanoTime();
+		sink += bench.run(ops);
+		return System.nanoTime() - start;
+	}
+
+	/**
+	 * Print a usage message and exit.
+	 */
+	private static void usage() {
+		System.err.println("Usage: java MicroBench [<pattern>]");
+		System.err
+				.println("<pattern> = Regular expression selecting benchmarks");
+		System.exit(1);
+	}
+}
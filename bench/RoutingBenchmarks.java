@@ -0,0 +1,277 @@
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * @author Ganesh Chandrasekaran
+ * @version 10-17-2026
+ */
+
+/**
+ * Class RoutingBenchmarks holds the benchmarks of the distance calculations,
+ * the neighbor selection and the next-hop selection of a GPSOffice node.
+ */
+public class RoutingBenchmarks {
+	static final int OFFICES = 1024;
+	static final int POINTS = 4096;
+	static final double AREA = 1000;
+
+	/**
+	 * Random office descriptors, from a fixed seed.
+	 */
+	static OfficeDescriptor[] offices(Random random) {
+		OfficeDescriptor[] offices = new OfficeDescriptor[OFFICES];
+		for (int i = 0; i < OFFICES; ++i) {
+			offices[i] = new OfficeDescriptor("O" + i, random.nextDouble()
+					* AREA, random.nextDouble() * AREA, i, i);
+		}
+		return offices;
+	}
+
+	/**
+	 * Random destination coordinates, from a fixed seed; x at even indexes,
+	 * y at odd ones.
+	 */
+	static double[] points(Random random) {
+		double[] points = new double[2 * POINTS];
+		for (int i = 0; i < points.length; ++i) {
+			points[i] = random.nextDouble() * AREA;
+		}
+		return points;
+	}
+
+	/**
+	 * OfficeDescriptor.distance(), the distance calculation behind
+	 * calculateDistance() and destDistance().
+	 */
+	static class Distance extends MicroBench {
+		OfficeDescriptor[] offices;
+		double[] points;
+
+		public void setUp() {
+			Random random = new Random(1);
+			offices = offices(random);
+			points = points(random);
+		}
+
+		public long run(int ops) {
+			double sum = 0;
+			for (int i = 0; i < ops; ++i) {
+				int p = (i & (POINTS - 1)) << 1;
+				sum += offices[i & (OFFICES - 1)].distance(points[p],
+						points[p + 1]);
+			}
+			return (long) sum;
+		}
+	}
+
+	/**
+	 * GPSOfficeRef.destDistance() on an in-process office.
+	 */
+	static class DestDistance extends MicroBench {
+		GPSOfficeRef[] refs;
+		double[] points;
+
+		public void setUp() {
+			Random random = new Random(1);
+			OfficeDescriptor[] offices = offices(random);
+			refs = new GPSOfficeRef[OFFICES];
+			for (int i = 0; i < OFFICES; ++i) {
+				refs[i] = new StubOffice(offices[i]);
+			}
+			points = points(random);
+		}
+
+		public long run(int ops) throws Exception {
+			double sum = 0;
+			for (int i = 0; i < ops; ++i) {
+				int p = (i & (POINTS - 1)) << 1;
+				sum += refs[i & (OFFICES - 1)].destDistance(points[p],
+						points[p + 1]);
+			}
+			return (long) sum;
+		}
+	}
+
+	/**
+	 * GPSOfficeRef.calculateDistance() between in-process offices.
+	 */
+	static class CalculateDistance extends MicroBench {
+		GPSOfficeRef[] refs;
+
+		public void setUp() {
+			OfficeDescriptor[] offices = offices(new Random(1));
+			refs = new GPSOfficeRef[OFFICES];
+			for (int i = 0; i < OFFICES; ++i) {
+				refs[i] = new StubOffice(offices[i]);
+			}
+		}
+
+		public long run(int ops) throws Exception {
+			double sum = 0;
+			for (int i = 0; i < ops; ++i) {
+				sum += refs[i & (OFFICES - 1)].calculateDistance(refs[(i * 7)
+						& (OFFICES - 1)]);
+			}
+			return (long) sum;
+		}
+	}
+
+	/**
+	 * GPSOffice.nextHop(), the choice among the three neighbors made for
+	 * every package a node forwards.
+	 */
+	static class NextHop extends MicroBench {
+		NeighborTable[] tables;
+		double[] own;
+		double[] points;
+
+		public void setUp() {
+			Random random = new Random(1);
+			OfficeDescriptor[] offices = offices(random);
+			OfficeIndex index = new OfficeIndex();
+			for (OfficeDescriptor office : offices) {
+				index.put(new OfficeIndex.Entry(office, null));
+			}
+			tables = new NeighborTable[OFFICES];
+			for (int i = 0; i < OFFICES; ++i) {
+				tables[i] = new NeighborTable(3);
+				for (OfficeIndex.Entry neighbor : index.nearest(offices[i].x,
+						offices[i].y, 3, offices[i].name)) {
+					tables[i].offer(neighbor, offices[i].x, offices[i].y);
+				}
+			}
+			points = points(random);
+			own = new double[POINTS];
+			for (int i = 0; i < POINTS; ++i) {
+				own[i] = offices[i & (OFFICES - 1)].distance(points[2 * i],
+						points[2 * i + 1]);
+			}
+		}
+
+		public long run(int ops) {
+			long hops = 0;
+			for (int i = 0; i < ops; ++i) {
+				int p = i & (POINTS - 1);
+				String next = GPSOffice.nextHop(tables[p & (OFFICES - 1)],
+						own[p], points[2 * p], points[2 * p + 1]);
+				if (next != null) {
+					++hops;
+				}
+			}
+			return hops;
+		}
+	}
+
+	/**
+	 * A next hop cache hit, for the same destinations as NextHop.
+	 */
+	static class NextHopCached extends NextHop {
+		NextHopCache cache = new NextHopCache(1, 1 << 16);
+
+		public void setUp() {
+			super.setUp();
+			for (int p = 0; p < POINTS; ++p) {
+				double x = points[2 * p];
+				double y = points[2 * p + 1];
+				NeighborTable table = tables[p & (OFFICES - 1)];
+				cache.store(cache.cellOf(x, y), table,
+						GPSOffice.nextHop(table, own[p], x, y));
+			}
+		}
+
+		public long run(int ops) {
+			long hops = 0;
+			for (int i = 0; i < ops; ++i) {
+				int p = i & (POINTS - 1);
+				String next = cache.lookup(
+						cache.cellOf(points[2 * p], points[2 * p + 1]),
+						tables[p & (OFFICES - 1)]);
+				if (next != null) {
+					++hops;
+				}
+			}
+			return hops;
+		}
+	}
+
+	/**
+	 * OfficeIndex.nearest(), the neighbor selection of updateNeighbors(),
+	 * among 1024 offices.
+	 */
+	static class NearestNeighbors extends MicroBench {
+		OfficeDescriptor[] offices;
+		OfficeIndex index;
+
+		public void setUp() {
+			offices = offices(new Random(1));
+			index = new OfficeIndex();
+			for (OfficeDescriptor office : offices) {
+				index.put(new OfficeIndex.Entry(office, null));
+			}
+		}
+
+		public long run(int ops) {
+			long sum = 0;
+			for (int i = 0; i < ops; ++i) {
+				OfficeDescriptor office = offices[i & (OFFICES - 1)];
+				sum += index.nearest(office.x, office.y, 3, office.name).size();
+			}
+			return sum;
+		}
+	}
+
+	/**
+	 * The original top-3 replacement loop of updateNeighbors(), which scans
+	 * every office, as the baseline for NearestNeighbors. The remote lookups
+	 * it made are left out.
+	 */
+	static class NearestNeighborsLinear extends MicroBench {
+		OfficeDescriptor[] offices;
+
+		public void setUp() {
+			offices = offices(new Random(1));
+		}
+
+		public long run(int ops) {
+			long sum = 0;
+			for (int i = 0; i < ops; ++i) {
+				sum += topThree(offices[i & (OFFICES - 1)]).size();
+			}
+			return sum;
+		}
+
+		private HashMap<String, Double[]> topThree(OfficeDescriptor self) {
+			HashMap<String, Double[]> neighborsTable = new HashMap<String, Double[]>();
+			Double maxDistance = 0.0;
+			Object removeNodeName = null;
+			for (OfficeDescriptor neighbor : offices) {
+				double distValue = self.equals(neighbor) ? 0 : neighbor
+						.distance(self.x, self.y);
+				if ((distValue != 0) && (neighborsTable.size() < 3)) {
+					neighborsTable.put(neighbor.name, new Double[] {
+							neighbor.x, neighbor.y, distValue });
+				} else if ((distValue != 0) && (neighborsTable.size() == 3)) {
+					maxDistance = 0.0;
+					Set<String> nodes = neighborsTable.keySet();
+					Iterator<String> nodeIterator = nodes.iterator();
+					while (nodeIterator.hasNext()) {
+						Object nodeName = nodeIterator.next();
+						Double[] nodeValues = neighborsTable.get(nodeName);
+						if (nodeValues[2] > maxDistance) {
+							maxDistance = nodeValues[2];
+							removeNodeName = nodeName;
+						}
+					}
+					if (distValue < maxDistance) {
+						neighborsTable.put(neighbor.name, new Double[] {
+								neighbor.x, neighbor.y, distValue });
+						neighborsTable.remove(removeNodeName);
+					}
+				}
+			}
+			return neighborsTable;
+		}
+	}
+}
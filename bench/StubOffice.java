@@ -0,0 +1,114 @@
+import edu.rit.ds.Lease;
+import edu.rit.ds.RemoteEventListener;
+import java.rmi.RemoteException;
+
+/**
+ * @author Ganesh Chandrasekaran
+ * @version 10-17-2026
+ */
+
+/**
+ * Class StubOffice is an in-process stand-in for a remote GPSOffice, used by
+ * the benchmarks. It answers the location queries from its descriptor, the
+ * same way GPSOffice does, and refuses everything else.
+ */
+public class StubOffice implements GPSOfficeRef {
+	private final OfficeDescriptor descriptor;
+
+	/**
+	 * Create a new stub office.
+	 *
+	 * @param descriptor
+	 *            OfficeDescriptor
+	 */
+	public StubOffice(OfficeDescriptor descriptor) {
+		this.descriptor = descriptor;
+	}
+
+	public double getX() {
+		return descriptor.x;
+	}
+
+	public double getY() {
+		return descriptor.y;
+	}
+
+	public String getOfficeName() {
+		return descriptor.name;
+	}
+
+	public OfficeDescriptor getDescriptor() {
+		return descriptor;
+	}
+
+	public double calculateDistance(GPSOfficeRef obj)
+			throws RemoteException {
+		OfficeDescriptor other = obj.getDescriptor();
+		if (descriptor.equals(other))
+			return 0;
+		else
+			return other.distance(descriptor.x, descriptor.y);
+	}
+
+	public double destDistance(double destX1, double destY1) {
+		return descriptor.distance(destX1, destY1);
+	}
+
+	public void updateNeighbors() {
+		throw new UnsupportedOperationException();
+	}
+
+	public void route(long n, double x, double y,
+			RemoteEventListener<TrackPackage> nodeListener) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void route(long n, double x, double y, ServiceClass service,
+			RemoteEventListener<TrackPackage> nodeListener) {
+		throw new UnsupportedOperationException();
+	}
+
+	public BatchReceipt routeBatch(Parcel[] parcels) {
+		throw new UnsupportedOperationException();
+	}
+
+	public long[] heldPackages(long[] n) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void sendPackage(long n, double x, double y,
+			RemoteEventListener<TrackPackage> nodeListener) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void sendPackage(long n, double x, double y, ServiceClass service,
+			RemoteEventListener<TrackPackage> nodeListener) {
+		throw new UnsupportedOperationException();
+	}
+
+	public long[] sendPackages(double[] x, double[] y,
+			RemoteEventListener<TrackPackage> nodeListener) {
+		throw new UnsupportedOperationException();
+	}
+
+	public long[] sendPackages(double[] x, double[] y, ServiceClass service,
+			RemoteEventListener<TrackPackage> nodeListener) {
+		throw new UnsupportedOperationException();
+	}
+
+	public Lease addListener(RemoteEventListener<TrackPackage> listener) {
+		throw new UnsupportedOperationException();
+	}
+
+	public long assignPackageNumber() {
+		throw new UnsupportedOperationException();
+	}
+
+	public OfficeStats getStats() {
+		throw new UnsupportedOperationException();
+	}
+
+	public long heartbeat() {
+		return descriptor.epoch;
+	}
+}
@@ -0,0 +1,143 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author Ganesh Chandrasekaran
+ * @version 10-17-2026
+ */
+
+/**
+ * Class TrackPackageBenchmarks holds the benchmarks of tracking event
+ * construction, rendering and serialization.
+ */
+public class TrackPackageBenchmarks {
+	private static final TrackPackage.Kind[] KINDS = TrackPackage.Kind
+			.values();
+
+	/**
+	 * Serializes an event the way RMI does and reads it back; returns the
+	 * number of bytes.
+	 */
+	static long roundTrip(TrackPackage event) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(event);
+		out.close();
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(
+				bytes.toByteArray()));
+		TrackPackage copy = (TrackPackage) in.readObject();
+		return bytes.size() + copy.packageID();
+	}
+
+	/**
+	 * new TrackPackage(), made for every event a node reports.
+	 */
+	static class Construct extends MicroBench {
+		public long run(int ops) {
+			long sum = 0;
+			for (int i = 0; i < ops; ++i) {
+				TrackPackage event = new TrackPackage(i, KINDS[i & 3], "A",
+						i, -i);
+				sum += event.packageID() + event.timestamp();
+			}
+			return sum;
+		}
+	}
+
+	/**
+	 * TrackPackage.message(), the text Customer and Headquarters print.
+	 */
+	static class Message extends MicroBench {
+		TrackPackage[] events = new TrackPackage[4];
+
+		public void setUp() {
+			for (int i = 0; i < events.length; ++i) {
+				events[i] = new TrackPackage(1825661777501815808L + i,
+						KINDS[i], "Office", 52.0, 1.0);
+			}
+		}
+
+		public long run(int ops) {
+			long sum = 0;
+			for (int i = 0; i < ops; ++i) {
+				sum += events[i & 3].message().length();
+			}
+			return sum;
+		}
+	}
+
+	/**
+	 * Serialization round trip of a single event.
+	 */
+	static class Serialize extends MicroBench {
+		TrackPackage event;
+
+		public void setUp() {
+			event = new TrackPackage(1825661777501815808L,
+					TrackPackage.Kind.ARRIVED, "Office", 52.0, 1.0);
+		}
+
+		public long run(int ops) throws Exception {
+			long sum = 0;
+			for (int i = 0; i < ops; ++i) {
+				sum += roundTrip(event);
+			}
+			return sum;
+		}
+	}
+
+	/**
+	 * Writing a single event to a reused object stream, the cost of the wire
+	 * form without the stream setup.
+	 */
+	static class Encode extends MicroBench {
+		TrackPackage event;
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 16);
+		ObjectOutputStream out;
+
+		public void setUp() throws Exception {
+			event = new TrackPackage(1825661777501815808L,
+					TrackPackage.Kind.ARRIVED, "Office", 52.0, 1.0);
+			out = new ObjectOutputStream(bytes);
+		}
+
+		public long run(int ops) throws Exception {
+			for (int i = 0; i < ops; ++i) {
+				bytes.reset();
+				out.reset();
+				out.writeObject(event);
+			}
+			out.flush();
+			return bytes.size();
+		}
+	}
+
+	/**
+	 * Serialization round trip of 64 coalesced events, one remote callback of
+	 * the event dispatcher.
+	 */
+	static class SerializeCoalesced extends MicroBench {
+		TrackPackage batch;
+
+		public void setUp() {
+			List<TrackPackage> events = new ArrayList<TrackPackage>();
+			for (int i = 0; i < 64; ++i) {
+				events.add(new TrackPackage(1825661777501815808L + i,
+						KINDS[i & 3], "Office", 52.0, 1.0));
+			}
+			batch = TrackPackage.coalesce(events);
+		}
+
+		public long run(int ops) throws Exception {
+			long sum = 0;
+			for (int i = 0; i < ops; ++i) {
+				sum += roundTrip(batch);
+			}
+			return sum;
+		}
+	}
+}